@@ -0,0 +1,57 @@
+package de.rpjosh.installer;
+
+import java.io.File;
+
+/**
+ * An additional file (like a library of the program) that is installed together with the executable
+ * into a subdirectory of the application directory
+ */
+public class Artifact {
+
+	protected final String url;
+	protected final String directory;
+	protected final String checksumAlgorithm;
+	protected final String checksum;
+
+	/**
+	 * @param url					URL of the file (or the path in the file system for an offline installation)
+	 * @param directory				subdirectory of the application directory like "lib/" (empty for the application directory itself)
+	 * @param checksumAlgorithm		algorithm of the checksum (may be null)
+	 * @param checksum				the expected checksum as lower case hex string (may be null)
+	 */
+	protected Artifact(String url, String directory, String checksumAlgorithm, String checksum) {
+
+		String dir = directory == null ? "" : directory.replace("\\", "/").replaceAll("^/+", "");
+		if (!dir.isEmpty() && !dir.endsWith("/")) dir += "/";
+		if (("/" + dir).contains("/../")) throw new IllegalArgumentException("The directory \"" + directory + "\" has to be within the application directory");
+
+		this.url = url;
+		this.directory = dir;
+		this.checksumAlgorithm = checksumAlgorithm;
+		this.checksum = checksum;
+	}
+
+	/**
+	 * @return	the name of the file (the last part of the URL without a query)
+	 */
+	protected String getFileName() {
+		String path = url.replace("\\", "/").replaceFirst("[?#].*$", "");
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * @param applicationDir	the application directory
+	 * @return					the location of the installed file
+	 */
+	protected File getTarget(String applicationDir) {
+		return new File(applicationDir + directory + getFileName());
+	}
+
+	/**
+	 * @return	if the file is a jar file that belongs to the class path of the program
+	 */
+	protected boolean isOnClasspath() {
+		return getFileName().toLowerCase().endsWith(".jar");
+	}
+
+}
@@ -0,0 +1,256 @@
+package de.rpjosh.installer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A persistent cache for downloaded files. Every entry is stored under a hash of the URL and the
+ * variant (operating system and architecture) of the file together with the validators (ETag / Last-Modified)
+ * the server returned. A cached file is only used after the server confirmed with a "304 Not Modified"
+ * that the file didn't change.
+ *
+ * The size of the cache is bounded ({@link InstallConfig#setDownloadCacheSize(long)}). When the limit is
+ * exceeded, the least recently used entries are removed
+ */
+public class ArtifactCache {
+
+	private static final String FILE_ENDING = ".bin";
+	private static final String METADATA_ENDING = ".properties";
+
+	private InstallConfig conf;
+	private Logger logger;
+
+	private final File directory;
+
+	/**
+	 * Creates a cache within the directory "cache/" of the download directory
+	 *
+	 * @param conf	configuration of the installation
+	 */
+	public ArtifactCache(InstallConfig conf) {
+		this.conf = conf;
+		this.logger = conf.getLogger();
+		this.directory = new File(conf.getDownloadDir() + "cache/");
+	}
+
+	/**
+	 * @return	if files should be cached at all
+	 */
+	protected boolean isEnabled() { return conf.getDownloadCacheSize() > 0; }
+
+	/**
+	 * Returns the cached entry for the given file
+	 *
+	 * @param url		URL of the file
+	 * @param variant	variant of the file like "linux_x64"
+	 *
+	 * @return			the entry or null when the file isn't cached (or the cached file is incomplete)
+	 */
+	protected Entry get(String url, String variant) {
+
+		if (!isEnabled()) return null;
+
+		Entry entry = new Entry(getKey(url, variant));
+		if (!entry.file.isFile() || !entry.metadata.isFile()) return null;
+
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(entry.metadata)) {
+			properties.load(in);
+
+			entry.eTag = properties.getProperty("eTag");
+			entry.lastModified = properties.getProperty("lastModified");
+			entry.size = Long.parseLong(properties.getProperty("size", "-1"));
+			entry.lastAccess = Long.parseLong(properties.getProperty("lastAccess", "0"));
+			for (String name: properties.stringPropertyNames()) {
+				if (name.startsWith("checksum.")) entry.checksums.put(name.substring("checksum.".length()), properties.getProperty(name));
+			}
+		} catch (Exception ex) {
+			logger.log("w", "Unable to read the metadata of the cached file \"" + entry.file + "\": " + ex.getMessage(), "ArtifactCache#get");
+			return null;
+		}
+
+		// without a validator the server can't confirm that the cached file is still up to date
+		if (entry.size != entry.file.length() || (entry.eTag == null && entry.lastModified == null)) return null;
+
+		return entry;
+	}
+
+	/**
+	 * Moves a downloaded file into the cache. Afterwards the least recently used entries are removed
+	 * when the size limit of the cache is exceeded
+	 *
+	 * @param url			URL of the file
+	 * @param variant		variant of the file like "linux_x64"
+	 * @param file			the downloaded file. It will be moved into the cache
+	 * @param eTag			the ETag header of the response (may be null)
+	 * @param lastModified	the Last-Modified header of the response (may be null)
+	 * @param algorithm		the algorithm of the checksum (may be null)
+	 * @param checksum		the checksum of the file (may be null)
+	 *
+	 * @return				the new entry
+	 *
+	 * @throws IOException	when the file couldn't be moved into the cache
+	 */
+	protected Entry put(String url, String variant, File file, String eTag, String lastModified, String algorithm, String checksum) throws IOException {
+
+		if (!directory.exists() && !directory.mkdirs()) throw new IOException("Unable to create the cache directory \"" + directory + "\"");
+
+		Entry entry = new Entry(getKey(url, variant));
+		entry.eTag = eTag;
+		entry.lastModified = lastModified;
+		entry.size = file.length();
+		if (algorithm != null && checksum != null) entry.checksums.put(algorithm, checksum);
+
+		// remove the old metadata first. An entry without metadata is never used
+		entry.metadata.delete();
+		Files.move(file.toPath(), entry.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		touch(entry);
+
+		evict(entry);
+		return entry;
+	}
+
+	/**
+	 * Marks the entry as used right now
+	 *
+	 * @param entry		the entry that was used
+	 */
+	protected void touch(Entry entry) {
+
+		entry.lastAccess = System.currentTimeMillis();
+
+		Properties properties = new Properties();
+		if (entry.eTag != null) properties.setProperty("eTag", entry.eTag);
+		if (entry.lastModified != null) properties.setProperty("lastModified", entry.lastModified);
+		properties.setProperty("size", String.valueOf(entry.size));
+		properties.setProperty("lastAccess", String.valueOf(entry.lastAccess));
+		entry.checksums.forEach((algorithm, checksum) -> properties.setProperty("checksum." + algorithm, checksum));
+
+		File tmp = new File(entry.metadata.getPath() + ".tmp");
+		try {
+			try (OutputStream out = new FileOutputStream(tmp)) {
+				properties.store(out, "Metadata of a cached download");
+			}
+			Files.move(tmp.toPath(), entry.metadata.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			logger.log("w", "Unable to write the metadata of the cached file \"" + entry.file + "\": " + ex.getMessage(), "ArtifactCache#touch");
+		}
+	}
+
+	/**
+	 * Removes the entry from the cache (for example when the checksum of the file doesn't match)
+	 *
+	 * @param entry		the entry to remove
+	 */
+	protected void remove(Entry entry) {
+		entry.metadata.delete();
+		entry.file.delete();
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache fits into the configured size
+	 *
+	 * @param keep		entry that must not be removed (the one that is currently installed)
+	 */
+	protected void evict(Entry keep) {
+
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_ENDING));
+		if (files == null) return;
+
+		List<Entry> entries = new ArrayList<Entry>();
+		long size = 0;
+		for (File file: files) {
+			String key = file.getName().substring(0, file.getName().length() - FILE_ENDING.length());
+			Entry entry = new Entry(key);
+			entry.size = file.length();
+			entry.lastAccess = readLastAccess(entry);
+
+			size += entry.size;
+			if (keep == null || !keep.file.equals(entry.file)) entries.add(entry);
+		}
+
+		entries.sort(Comparator.comparingLong(e -> e.lastAccess));
+		for (Entry entry: entries) {
+			if (size <= conf.getDownloadCacheSize()) break;
+
+			logger.log("d", "Removing the least recently used file \"" + entry.file.getName() + "\" from the cache", "ArtifactCache#evict");
+			entry.metadata.delete();
+			if (entry.file.delete()) size -= entry.size;
+		}
+	}
+
+	private long readLastAccess(Entry entry) {
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(entry.metadata)) {
+			properties.load(in);
+			return Long.parseLong(properties.getProperty("lastAccess", "0"));
+		} catch (Exception ex) {
+			// entries without metadata are removed first
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the key of the entry: the SHA-256 hash of the URL and the variant
+	 */
+	private static String getKey(String url, String variant) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest((url + "|" + variant).getBytes(StandardCharsets.UTF_8));
+			return Checksum.toHex(hash);
+		} catch (NoSuchAlgorithmException ex) {
+			return Integer.toHexString((url + "|" + variant).hashCode());
+		}
+	}
+
+	/**
+	 * A file within the cache
+	 */
+	protected class Entry {
+
+		final File file;
+		final File metadata;
+		String eTag;
+		String lastModified;
+		long size = -1;
+		long lastAccess = 0;
+		// algorithm | checksum of the file
+		final Map<String, String> checksums = new HashMap<String, String>();
+
+		Entry(String key) {
+			this.file = new File(directory, key + FILE_ENDING);
+			this.metadata = new File(directory, key + METADATA_ENDING);
+		}
+
+		/**
+		 * @return	the cached file
+		 */
+		protected File getFile() { return file; }
+
+		/**
+		 * @param algorithm		algorithm of the checksum
+		 * @return	the stored checksum of the file or null if it wasn't calculated with this algorithm
+		 */
+		protected String getChecksum(String algorithm) { return checksums.get(algorithm); }
+
+		/**
+		 * Stores the checksum of the file. The metadata is written on the next call of {@link ArtifactCache#touch(Entry)}
+		 */
+		protected void setChecksum(String algorithm, String checksum) { checksums.put(algorithm, checksum); }
+	}
+
+}
@@ -0,0 +1,47 @@
+package de.rpjosh.installer;
+
+/**
+ * A token bucket that limits the bandwidth of all downloads of the installation.
+ * The bucket is filled with the configured number of bytes per second and holds at most the bytes of one second.
+ *
+ * Received bytes are always taken out of the bucket, even when it doesn't contain enough tokens. The caller then
+ * has to wait the returned time before requesting more data, so the limit is kept without blocking the threads of the HTTP client
+ */
+public class BandwidthLimiter {
+
+	private final long bytesPerSecond;
+	private double tokens;
+	private long lastRefill = System.nanoTime();
+
+	/**
+	 * @param bytesPerSecond	the maximum number of bytes per second (greater than 0)
+	 */
+	public BandwidthLimiter(long bytesPerSecond) {
+		if (bytesPerSecond <= 0) throw new IllegalArgumentException("The bandwidth must be greater than 0 bytes per second");
+		this.bytesPerSecond = bytesPerSecond;
+		this.tokens = bytesPerSecond;
+	}
+
+	/**
+	 * Takes the received bytes out of the bucket
+	 *
+	 * @param bytes		the number of received bytes
+	 *
+	 * @return			the time in nanoseconds to wait before more bytes may be received
+	 */
+	protected synchronized long reserve(long bytes) {
+
+		long now = System.nanoTime();
+		tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / 1e9);
+		lastRefill = now;
+
+		tokens -= bytes;
+		return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+	}
+
+	/**
+	 * @return	the maximum number of bytes per second
+	 */
+	public long getBytesPerSecond() { return bytesPerSecond; }
+
+}
@@ -0,0 +1,95 @@
+package de.rpjosh.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helper methods for the checksums (SHA-256, SHA-512) of the downloaded files
+ */
+public class Checksum {
+
+	private Checksum() { }
+
+	/**
+	 * Calculates the checksum of a file. For downloaded files the checksum is already calculated
+	 * while downloading, so this is only needed for local files
+	 *
+	 * @param file			the file
+	 * @param algorithm		algorithm to use (SHA-256, SHA-512)
+	 *
+	 * @return				the checksum as lower case hex string
+	 *
+	 * @throws IOException	when the file couldn't be read
+	 * @throws NoSuchAlgorithmException	when the algorithm isn't supported
+	 */
+	public static String of(File file, String algorithm) throws IOException, NoSuchAlgorithmException {
+
+		MessageDigest digest = MessageDigest.getInstance(algorithm);
+
+		try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Extracts the checksum of a file out of a checksum file. The format of the file can be the output
+	 * of "sha256sum" (checksum  filename) or just the checksum
+	 *
+	 * @param content	content of the checksum file
+	 * @param fileName	the name of the file for which the checksum is searched
+	 *
+	 * @return			the checksum as lower case hex string or null if no checksum was found
+	 */
+	public static String parse(String content, String fileName) {
+
+		String first = null;
+		for (String line: content.split("\\r?\\n")) {
+			String[] values = line.trim().split("\\s+");
+			if (values.length == 0 || values[0].isEmpty() || !values[0].matches("[0-9a-fA-F]+")) continue;
+
+			if (first == null) first = values[0];
+			// "sha256sum" prefixes the file name with a '*' in binary mode
+			if (values.length > 1 && values[values.length - 1].replaceFirst("^\\*", "").equals(fileName)) return values[0].toLowerCase();
+		}
+
+		return first == null ? null : first.toLowerCase();
+	}
+
+	/**
+	 * Checks if the provided algorithm is supported by the JVM
+	 *
+	 * @param algorithm		the algorithm (SHA-256, SHA-512)
+	 *
+	 * @return				if the algorithm can be used
+	 */
+	public static boolean isSupported(String algorithm) {
+		try {
+			MessageDigest.getInstance(algorithm);
+			return true;
+		} catch (NoSuchAlgorithmException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Converts the bytes to a lower case hex string
+	 */
+	public static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b: bytes) hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+}
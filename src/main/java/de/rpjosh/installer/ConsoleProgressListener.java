@@ -0,0 +1,33 @@
+package de.rpjosh.installer;
+
+import java.text.DecimalFormat;
+
+/**
+ * The default {@link ProgressListener} which prints the progress of the download into a single line of the console
+ */
+public class ConsoleProgressListener implements ProgressListener {
+
+	private final DecimalFormat format = new DecimalFormat("0.00");
+
+	@Override
+	public synchronized void onProgress(long transferredBytes, long totalBytes) {
+
+		String transferred = format.format(transferredBytes / 1048576.0);
+
+		if (totalBytes > 0) {
+			String percent = format.format(transferredBytes * 100.0 / totalBytes);
+			System.out.print("\r" + Tr.get("installation_download") + ": " + percent + "% (" + transferred + " MB / " + format.format(totalBytes / 1048576.0) + " MB)");
+		} else {
+			// without a size (chunked response) only the received bytes can be shown
+			System.out.print("\r" + Tr.get("installation_download") + ": " + formatBytes(transferredBytes) + "   ");
+		}
+	}
+
+	private String formatBytes(long bytes) {
+		if (bytes < 1024) return bytes + " B";
+		if (bytes < 1048576) return format.format(bytes / 1024.0) + " KB";
+		if (bytes < 1073741824) return format.format(bytes / 1048576.0) + " MB";
+		return format.format(bytes / 1073741824.0) + " GB";
+	}
+
+}
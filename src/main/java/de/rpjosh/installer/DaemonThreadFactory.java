@@ -0,0 +1,27 @@
+package de.rpjosh.installer;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for the background work of the installer (downloads, tasks, prompts...),
+ * so that a hanging thread doesn't prevent the JVM from exiting
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+	private final String prefix;
+	private final AtomicInteger counter = new AtomicInteger();
+
+	/**
+	 * @param prefix	the name of the threads is built out of the prefix and a counter
+	 */
+	DaemonThreadFactory(String prefix) { this.prefix = prefix; }
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+
+}
@@ -0,0 +1,449 @@
+package de.rpjosh.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Updates an already installed jar file by downloading only the entries that changed.
+ *
+ * The central directory of the remote jar is fetched with range requests and compared with the central
+ * directory of the installed jar. The data of entries with the same name, CRC32, sizes and compression method is
+ * copied out of the installed jar, all other entries are downloaded. When the central directory records of an entry
+ * differ in more than the offset, the local header may differ too and is downloaded from the remote file.
+ * The new jar is assembled with the same layout (offsets) as the remote file, so the central directory of the
+ * remote file can be taken over unchanged.
+ *
+ * When the jar can't be updated this way (no range requests, ZIP64...), the whole file
+ * has to be downloaded
+ */
+public class DeltaUpdate {
+
+	private static final int LOC_SIGNATURE = 0x04034b50;
+	private static final int CEN_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int DESCRIPTOR_SIGNATURE = 0x08074b50;
+	private static final int LOC_SIZE = 30;
+	private static final int CEN_SIZE = 46;
+	private static final int END_SIZE = 22;
+	/** Maximum length of the comment at the end of a zip file */
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+	/** Changed entries that are closer together than this are downloaded within a single request */
+	private static final long MAX_RANGE_GAP = 64 * 1024;
+
+	private InstallConfig conf;
+	private Logger logger;
+	private Downloader downloader;
+
+	private long reusedBytes = 0;
+	private long downloadedBytes = 0;
+
+	/**
+	 * Creates a new delta update
+	 *
+	 * @param conf			configuration of the installation
+	 * @param downloader	the downloader for the new jar file. A probe has to be executed before
+	 */
+	public DeltaUpdate(InstallConfig conf, Downloader downloader) {
+		this.conf = conf;
+		this.logger = conf.getLogger();
+		this.downloader = downloader;
+	}
+
+	/**
+	 * Creates the new jar file out of the installed jar file and the changed entries of the remote jar file
+	 *
+	 * @param installed		the currently installed jar file
+	 * @param destination	the file to which the new jar file is written
+	 *
+	 * @return				the new jar file or null when a delta update isn't possible
+	 *
+	 * @throws IOException	when the update failed. The whole file should be downloaded in this case
+	 */
+	protected File apply(File installed, File destination) throws IOException {
+
+		if (!downloader.isRangeSupported() || !installed.isFile()) return null;
+		long length = downloader.getContentLength();
+
+		// the end of central directory record is located within the last bytes of the file
+		long tailStart = Math.max(0, length - END_SIZE - MAX_COMMENT_SIZE);
+		byte[] tail = downloader.downloadBytes(tailStart, length - 1);
+		downloadedBytes += tail.length;
+
+		CentralDirectory remote = readCentralDirectory(tail, tailStart, length);
+		if (remote == null) { logger.log("d", "The remote file is no supported zip file", "DeltaUpdate#apply"); return null; }
+
+		if (remote.offset < tailStart) {
+			byte[] data = downloader.downloadBytes(remote.offset, remote.end - 1);
+			downloadedBytes += data.length;
+			remote.data = data;
+		} else {
+			remote.data = Arrays.copyOfRange(tail, (int) (remote.offset - tailStart), (int) (remote.end - tailStart));
+		}
+		if (!remote.readEntries(length)) { logger.log("d", "The central directory of the remote file isn't supported", "DeltaUpdate#apply"); return null; }
+
+		File directory = destination.getParentFile();
+		if (directory != null && !directory.exists() && !directory.mkdirs()) throw new IOException("Unable to create the directory \"" + directory + "\"");
+
+		try (RandomAccessFile in = new RandomAccessFile(installed, "r");
+			 RandomAccessFile raf = new RandomAccessFile(destination, "rw")) {
+
+			CentralDirectory local = readCentralDirectory(in);
+			if (local == null || !local.readEntries(in.length())) { logger.log("d", "The installed file is no supported zip file", "DeltaUpdate#apply"); return null; }
+
+			Map<String, Entry> localEntries = new HashMap<String, Entry>();
+			for (Entry entry: local.entries) localEntries.put(entry.getName(), entry);
+
+			raf.setLength(0);
+			raf.setLength(length);
+			FileChannel out = raf.getChannel();
+			FileChannel source = in.getChannel();
+
+			// collect the ranges of the changed entries. Of unchanged entries with a different header (e.g. another extra field)
+			// only the local header is downloaded
+			List<long[]> ranges = new ArrayList<long[]>();
+			Map<Entry, Entry> unchanged = new LinkedHashMap<Entry, Entry>();
+			long position = 0;
+			for (Entry entry: remote.entries) {
+				if (entry.offset > position) addRange(ranges, position, entry.offset);
+
+				Entry previous = localEntries.get(entry.getName());
+				long headerEnd = isUnchanged(entry, previous) ? getHeaderEnd(entry) : -1;
+				if (isSameRecord(entry, previous)) unchanged.put(entry, previous);
+				else if (headerEnd > 0) {
+					unchanged.put(entry, previous);
+					addRange(ranges, entry.offset, headerEnd);
+				} else addRange(ranges, entry.offset, entry.recordEnd);
+				position = entry.recordEnd;
+			}
+			if (remote.offset > position) addRange(ranges, position, remote.offset);
+			this.download(ranges, out);
+
+			// copy the data of the unchanged entries behind the downloaded headers
+			List<long[]> missing = new ArrayList<long[]>();
+			for (Map.Entry<Entry, Entry> entry: unchanged.entrySet()) {
+				if (!copyEntry(entry.getKey(), entry.getValue(), source, out)) addRange(missing, entry.getKey().offset, entry.getKey().recordEnd);
+			}
+			this.download(missing, out);
+
+			// the central directory and the end record are written unchanged
+			out.write(ByteBuffer.wrap(remote.data), remote.offset);
+			out.write(ByteBuffer.wrap(tail, (int) (remote.end - tailStart), (int) (length - remote.end)), remote.end);
+		}
+
+		// make sure that the assembled file is still a readable zip file and the copied entries weren't modified in the installed file
+		try (ZipFile zip = new ZipFile(destination)) {
+			if (zip.size() != remote.entries.size()) throw new IOException("The assembled file contains " + zip.size() + " instead of " + remote.entries.size() + " entries");
+			for (Entry entry: remote.entries) {
+				if (entry.copied) verifyEntry(zip, entry);
+			}
+		}
+
+		logger.log("d", "Delta update: reused " + reusedBytes + " bytes of the installed file and downloaded " + downloadedBytes + " of " + length + " bytes", "DeltaUpdate#apply");
+		return destination;
+	}
+
+	/**
+	 * @return	the number of bytes that were copied out of the installed file
+	 */
+	protected long getReusedBytes() { return reusedBytes; }
+
+	/**
+	 * @return	the number of bytes that were downloaded (including the central directory)
+	 */
+	protected long getDownloadedBytes() { return downloadedBytes; }
+
+	/**
+	 * Downloads the ranges of the remote file to the same position within the new file
+	 */
+	private void download(List<long[]> ranges, FileChannel out) throws IOException {
+		for (long[] range: ranges) {
+			downloader.downloadBytes(range[0], range[1] - 1, out);
+			downloadedBytes += range[1] - range[0];
+		}
+	}
+
+	/**
+	 * @param entry		the entry of the remote file
+	 * @param local		the entry with the same name within the installed file (may be null)
+	 *
+	 * @return			if the content of the entry didn't change
+	 */
+	private static boolean isUnchanged(Entry entry, Entry local) {
+		return local != null && entry.crc == local.crc && entry.compressedSize == local.compressedSize && entry.size == local.size
+				&& entry.method == local.method;
+	}
+
+	/**
+	 * @param entry		the entry of the remote file
+	 * @param local		the entry with the same name within the installed file (may be null)
+	 *
+	 * @return			if the whole record (local header, data and data descriptor) can be taken over from the installed file
+	 */
+	private static boolean isSameRecord(Entry entry, Entry local) {
+		return isUnchanged(entry, local) && entry.versionNeeded == local.versionNeeded && entry.flags == local.flags && entry.time == local.time
+				&& entry.date == local.date && Arrays.equals(entry.extra, local.extra) && entry.recordEnd - entry.offset == local.recordEnd - local.offset;
+	}
+
+	/**
+	 * Returns the end of the local header of the remote entry. With a data descriptor the length of the descriptor (12 or 16 bytes)
+	 * isn't known before the header was read -> the latest possible end is returned
+	 *
+	 * @param entry		the entry of the remote file
+	 * @return			the end (exclusive) of the local header within the remote file or -1 when the entry has an unexpected layout
+	 */
+	private static long getHeaderEnd(Entry entry) {
+		long headerLength = entry.recordEnd - entry.offset - entry.compressedSize - (entry.hasDataDescriptor() ? 12 : 0);
+		return headerLength >= LOC_SIZE + entry.name.length ? entry.offset + headerLength : -1;
+	}
+
+	/**
+	 * Copies an unchanged entry out of the installed jar file. If the record differs from the installed one, the local header
+	 * of the remote file has to be downloaded before and only the data is copied. The data descriptor is then rebuilt
+	 * from the values of the remote central directory
+	 *
+	 * @param entry		the entry of the remote file
+	 * @param local		the entry with the same name within the installed file
+	 *
+	 * @return			if the entry could be copied. Otherwise it has to be downloaded
+	 */
+	private boolean copyEntry(Entry entry, Entry local, FileChannel source, FileChannel out) throws IOException {
+
+		if (isSameRecord(entry, local)) {
+			if (local.recordEnd > source.size()) return false;
+			transfer(source, local.offset, entry.recordEnd - entry.offset, out, entry.offset, entry);
+
+			entry.copied = true;
+			reusedBytes += entry.recordEnd - entry.offset;
+			return true;
+		}
+
+		// the downloaded header determines the position of the data
+		ByteBuffer header = ByteBuffer.allocate(LOC_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		if (out.read(header, entry.offset) != LOC_SIZE || header.getInt(0) != LOC_SIGNATURE) return false;
+		int headerLength = LOC_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+
+		// the entry must fit exactly into the space of the remote entry (a data descriptor is 12 or 16 bytes long)
+		long descriptorLength = entry.recordEnd - entry.offset - headerLength - entry.compressedSize;
+		if (entry.hasDataDescriptor() ? descriptorLength != 12 && descriptorLength != 16 : descriptorLength != 0) return false;
+
+		// the data starts behind the header of the installed file
+		ByteBuffer localHeader = ByteBuffer.allocate(LOC_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		if (source.read(localHeader, local.offset) != LOC_SIZE || localHeader.getInt(0) != LOC_SIGNATURE) return false;
+		long dataStart = local.offset + LOC_SIZE + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+		if (dataStart + entry.compressedSize > source.size()) return false;
+
+		long target = entry.offset + headerLength;
+		transfer(source, dataStart, entry.compressedSize, out, target, entry);
+
+		if (descriptorLength > 0) {
+			ByteBuffer descriptor = ByteBuffer.allocate((int) descriptorLength).order(ByteOrder.LITTLE_ENDIAN);
+			if (descriptorLength == 16) descriptor.putInt(DESCRIPTOR_SIGNATURE);
+			descriptor.putInt((int) entry.crc);
+			descriptor.putInt((int) entry.compressedSize);
+			descriptor.putInt((int) entry.size);
+			descriptor.flip();
+			while (descriptor.hasRemaining()) out.write(descriptor, target + entry.compressedSize + descriptor.position());
+		}
+
+		entry.copied = true;
+		reusedBytes += entry.compressedSize + descriptorLength;
+		return true;
+	}
+
+	/**
+	 * Copies the given number of bytes out of the installed file to the position within the new file
+	 */
+	private static void transfer(FileChannel source, long position, long count, FileChannel out, long target, Entry entry) throws IOException {
+
+		long copied = 0;
+		while (copied < count) {
+			long transferred = source.transferTo(position + copied, count - copied, out.position(target + copied));
+			if (transferred <= 0) throw new IOException("Unable to copy the entry \"" + entry.getName() + "\" out of the installed file");
+			copied += transferred;
+		}
+	}
+
+	/**
+	 * Checks the CRC32 of an entry that was copied out of the installed file
+	 *
+	 * @throws IOException	when the content doesn't match the remote entry
+	 */
+	private static void verifyEntry(ZipFile zip, Entry entry) throws IOException {
+
+		ZipEntry zipEntry = zip.getEntry(entry.getName());
+		if (zipEntry == null) throw new IOException("The entry \"" + entry.getName() + "\" is missing in the assembled file");
+
+		CRC32 crc = new CRC32();
+		long size = 0;
+		byte[] buffer = new byte[8192];
+		try (InputStream in = zip.getInputStream(zipEntry)) {
+			for (int read; (read = in.read(buffer)) != -1; size += read) crc.update(buffer, 0, read);
+		}
+		if (crc.getValue() != entry.crc || size != entry.size) throw new IOException("The copied entry \"" + entry.getName() + "\" doesn't match the remote file");
+	}
+
+	/**
+	 * Adds the range to the list of ranges to download. The range is merged with the previous one when they are close together
+	 */
+	private static void addRange(List<long[]> ranges, long start, long end) {
+		long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+		if (last != null && start - last[1] <= MAX_RANGE_GAP) last[1] = end;
+		else ranges.add(new long[] { start, end });
+	}
+
+	/**
+	 * Searches the end of central directory record within the last bytes of a zip file
+	 *
+	 * @param tail			the last bytes of the file
+	 * @param tailStart		position of the bytes within the file
+	 * @param length		length of the file
+	 *
+	 * @return				the location of the central directory or null if the file isn't a supported zip file
+	 */
+	private static CentralDirectory readCentralDirectory(byte[] tail, long tailStart, long length) {
+
+		ByteBuffer buffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = tail.length - END_SIZE; i >= 0; i--) {
+			if (buffer.getInt(i) != END_SIGNATURE) continue;
+			// the comment has to end exactly at the end of the file
+			if (i + END_SIZE + (buffer.getShort(i + 20) & 0xFFFF) != tail.length) continue;
+
+			CentralDirectory directory = new CentralDirectory();
+			directory.count = buffer.getShort(i + 10) & 0xFFFF;
+			directory.offset = buffer.getInt(i + 16) & 0xFFFFFFFFL;
+			directory.end = tailStart + i;
+
+			// ZIP64 and files with data in front of the zip (offsets don't match) aren't supported
+			long size = buffer.getInt(i + 12) & 0xFFFFFFFFL;
+			if (directory.count == 0xFFFF || directory.offset == 0xFFFFFFFFL || directory.offset + size != directory.end) return null;
+
+			return directory;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Reads the central directory of a local zip file
+	 */
+	private static CentralDirectory readCentralDirectory(RandomAccessFile file) throws IOException {
+
+		long length = file.length();
+		long tailStart = Math.max(0, length - END_SIZE - MAX_COMMENT_SIZE);
+		byte[] tail = new byte[(int) (length - tailStart)];
+		file.seek(tailStart);
+		file.readFully(tail);
+
+		CentralDirectory directory = readCentralDirectory(tail, tailStart, length);
+		if (directory == null) return null;
+
+		directory.data = new byte[(int) (directory.end - directory.offset)];
+		file.seek(directory.offset);
+		file.readFully(directory.data);
+		return directory;
+	}
+
+	/**
+	 * The central directory of a zip file
+	 */
+	private static class CentralDirectory {
+
+		int count;
+		// position of the first byte and the end (exclusive) of the central directory within the file
+		long offset;
+		long end;
+		byte[] data;
+		// the entries sorted by their position in the file
+		final List<Entry> entries = new ArrayList<Entry>();
+
+		/**
+		 * Parses the entries out of the data of the central directory
+		 *
+		 * @return	if all entries could be read and are supported
+		 */
+		boolean readEntries(long length) {
+
+			ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+			int position = 0;
+			for (int i = 0; i < count; i++) {
+				if (position + CEN_SIZE > data.length || buffer.getInt(position) != CEN_SIGNATURE) return false;
+
+				Entry entry = new Entry();
+				entry.versionNeeded = buffer.getShort(position + 6) & 0xFFFF;
+				entry.flags = buffer.getShort(position + 8) & 0xFFFF;
+				entry.method = buffer.getShort(position + 10) & 0xFFFF;
+				entry.time = buffer.getShort(position + 12) & 0xFFFF;
+				entry.date = buffer.getShort(position + 14) & 0xFFFF;
+				entry.crc = buffer.getInt(position + 16) & 0xFFFFFFFFL;
+				entry.compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+				entry.size = buffer.getInt(position + 24) & 0xFFFFFFFFL;
+				int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+				int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+				int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+				entry.offset = buffer.getInt(position + 42) & 0xFFFFFFFFL;
+
+				// ZIP64 entries
+				if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.offset == 0xFFFFFFFFL) return false;
+				if (position + CEN_SIZE + nameLength + extraLength + commentLength > data.length) return false;
+
+				entry.name = Arrays.copyOfRange(data, position + CEN_SIZE, position + CEN_SIZE + nameLength);
+				entry.extra = Arrays.copyOfRange(data, position + CEN_SIZE + nameLength, position + CEN_SIZE + nameLength + extraLength);
+				entries.add(entry);
+				position += CEN_SIZE + nameLength + extraLength + commentLength;
+			}
+
+			// every entry ends where the next one starts
+			entries.sort(Comparator.comparingLong(e -> e.offset));
+			for (int i = 0; i < entries.size(); i++) {
+				entries.get(i).recordEnd = i + 1 < entries.size() ? entries.get(i + 1).offset : offset;
+				if (entries.get(i).recordEnd <= entries.get(i).offset || entries.get(i).recordEnd > length) return false;
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * A single entry of the central directory
+	 */
+	private static class Entry {
+
+		byte[] name;
+		// the extra field of the central directory (the local header may contain another one)
+		byte[] extra;
+		int versionNeeded;
+		int flags;
+		int method;
+		int time;
+		int date;
+		long crc;
+		long compressedSize;
+		long size;
+		// position of the local header and the end of the entry (exclusive) within the file
+		long offset;
+		long recordEnd;
+		// if the data was copied out of the installed file
+		boolean copied = false;
+
+		boolean hasDataDescriptor() { return (flags & 0x08) != 0; }
+
+		String getName() { return new String(name, (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1); }
+	}
+
+}
@@ -0,0 +1,1330 @@
+package de.rpjosh.installer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Downloads a file from a webserver. When the server supports range requests, the file
+ * is split into multiple parts which are fetched concurrently over separate connections
+ * and written directly to their position inside the destination file.
+ *
+ * The partial file is kept in the download directory together with a state file containing the
+ * validator (ETag / Last-Modified) of the remote file and the progress of every part.
+ * An interrupted download is resumed by the next run as long as the remote file didn't change.
+ *
+ * When a checksum algorithm is set, the checksum is calculated while the bytes are written. Bytes that
+ * arrive out of order (from the following parts or a resumed download) are read back as soon as all bytes
+ * before them are available.
+ *
+ * All requests are sent with the shared HTTP client of the installation ({@link InstallConfig#getHttpClient()}),
+ * so the connections are reused (or multiplexed with HTTP/2) for every file of the installation. The response
+ * bodies are written directly into the file when the HTTP client delivers them.
+ *
+ * When mirrors are configured, the probe is sent to several of them at once and the fastest one is used.
+ * If a mirror fails during the download, the incomplete parts are continued from the next mirror
+ */
+public class Downloader {
+
+	/** Minimum size of a single part. Smaller files are not worth to be split */
+	private static final long MIN_PART_SIZE = 1024 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** Number of downloaded bytes after which the state file is updated */
+	private static final long CHECKPOINT_BYTES = 4 * 1024 * 1024;
+	/** Maximum number of mirrors that are probed at the same time */
+	private static final int MAX_RACING_MIRRORS = 3;
+
+	private InstallConfig conf;
+	private Logger logger;
+
+	private final URL url;
+	// additional URLs of the same file in the order of preference
+	private List<URL> mirrors = new ArrayList<URL>();
+	// the URL from which the file is currently downloaded
+	private volatile Source source;
+	private final Set<URL> failedSources = ConcurrentHashMap.newKeySet();
+	// origin (https://host:443) | value of the authorization header that was set explicitly
+	private final Map<String, String> authorizations = new ConcurrentHashMap<String, String>();
+	// validators of a cached copy of the file for a conditional request
+	private String cachedETag = null;
+	private String cachedLastModified = null;
+
+	// Result of the last probe //
+	private Flow.Publisher<List<ByteBuffer>> probeBody = null;
+	private int responseCode = -1;
+	private long contentLength = -1;
+	private boolean acceptRanges = false;
+	private String eTag = null;
+	private String lastModified = null;
+	private long retryAfter = -1;
+
+	// System.nanoTime() at which the overall timeout of the retry policy expires (null = no limit)
+	private Long deadline = null;
+
+	// State of the current download //
+	private File partialFile;
+	private File stateFile;
+	private List<Part> parts = new ArrayList<Part>();
+	private final AtomicLong transferredBytes = new AtomicLong();
+	private final AtomicLong lastCheckpoint = new AtomicLong();
+	// set when a part failed so that the other parts stop without interrupting the shared file channel
+	private volatile boolean aborted = false;
+
+	// Progress of the download //
+	private ProgressListener progressListener = null;
+	private final AtomicLong lastProgress = new AtomicLong();
+	// bytes and time of the download without the resumed bytes of a previous run
+	private long downloadedBytes = 0;
+	private long downloadNanos = 0;
+
+	// Checksum of the downloaded file //
+	private MessageDigest digest = null;
+	private long digestPosition = 0;
+	private final ReentrantLock digestLock = new ReentrantLock();
+	private String checksum = null;
+
+	/**
+	 * Creates a new downloader for the given URL
+	 *
+	 * @param conf	configuration of the installation
+	 * @param url	URL of the file to download
+	 */
+	public Downloader(InstallConfig conf, URL url) {
+		this.conf = conf;
+		this.logger = conf.getLogger();
+		this.url = url;
+		this.source = new Source(url, null);
+	}
+
+	/**
+	 * Sets mirrors from which the same file can be downloaded. The probe is sent to the URL
+	 * and the first mirrors concurrently and the fastest responding server is used for the download.
+	 * When a server fails during the download, the download is continued from the next mirror
+	 *
+	 * @param mirrors	the URLs of the mirrors in the order of preference
+	 */
+	protected void setMirrors(List<URL> mirrors) { this.mirrors = new ArrayList<URL>(mirrors); }
+
+	/**
+	 * Sets the value of the "Authorization" header that is sent with every request to the server of the URL
+	 * (but not to mirrors on other servers). Without an authorization, the one that was already accepted
+	 * by the same server during this installation is sent
+	 *
+	 * @param authorization		header value like "Basic dXNlcjpwYXNz" (null to remove it)
+	 */
+	protected void setAuthorization(String authorization) {
+		if (authorization == null) authorizations.remove(InstallConfig.getOrigin(url));
+		else authorizations.put(InstallConfig.getOrigin(url), authorization);
+	}
+
+	/**
+	 * @return	the value of the "Authorization" header that is sent with the requests to the URL or null
+	 */
+	protected String getAuthorization() { return getAuthorization(url); }
+
+	/**
+	 * @param target	URL of the request
+	 * @return			the value of the "Authorization" header for the server of the target or null
+	 */
+	private String getAuthorization(URL target) {
+		String authorization = authorizations.get(InstallConfig.getOrigin(target));
+		return authorization != null ? authorization : conf.getAuthorization(target);
+	}
+
+	/**
+	 * Sets the validators of a locally cached copy of the file. The probe will then be sent as a
+	 * conditional request and the server responds with "304 Not Modified" when the cached copy is still up to date
+	 *
+	 * @param eTag				ETag of the cached file (may be null)
+	 * @param lastModified		last modification date of the cached file (may be null)
+	 */
+	protected void setCacheValidators(String eTag, String lastModified) {
+		this.cachedETag = eTag;
+		this.cachedLastModified = lastModified;
+	}
+
+	/**
+	 * Calculates the checksum of the file while downloading it
+	 *
+	 * @param algorithm		algorithm of the checksum (SHA-256, SHA-512)
+	 *
+	 * @throws NoSuchAlgorithmException		when the algorithm isn't supported
+	 */
+	protected void setChecksumAlgorithm(String algorithm) throws NoSuchAlgorithmException {
+		this.digest = MessageDigest.getInstance(algorithm);
+	}
+
+	/**
+	 * Reports the progress of the download to the given listener
+	 *
+	 * @param listener	the listener (may be null)
+	 */
+	protected void setProgressListener(ProgressListener listener) { this.progressListener = listener; }
+
+	/**
+	 * Requests the first byte of the file to determine the size of the file and if the
+	 * server supports range requests. When the server ignores the range header, the response
+	 * of the probe is kept open and reused for the download.
+	 * When validators of a cached file were set, the code 304 is returned if the cached file is still valid
+	 *
+	 * Connection errors and temporary errors of the server are retried with the configured {@link RetryPolicy}
+	 *
+	 * @return	the HTTP response code of the probe
+	 *
+	 * @throws IOException	when the server could not be reached
+	 */
+	protected int probe() throws IOException {
+
+		startDeadline();
+		for (int attempt = 1; ; attempt++) {
+			try {
+				int code = probeOnce();
+				if (!conf.getRetryPolicy().isRetryable(code) || !awaitRetry(attempt, "HTTP " + code, retryAfter)) return code;
+			} catch (IOException ex) {
+				if (!awaitRetry(attempt, ex.getMessage(), -1)) throw ex;
+			}
+		}
+	}
+
+	private int probeOnce() throws IOException {
+
+		closeProbe();
+		retryAfter = -1;
+		failedSources.clear();
+
+		List<URL> candidates = new ArrayList<URL>();
+		candidates.add(url);
+		candidates.addAll(mirrors.subList(0, Math.min(mirrors.size(), MAX_RACING_MIRRORS - 1)));
+
+		Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> winner;
+		if (candidates.size() == 1) winner = new AbstractMap.SimpleEntry<>(url, send(newProbeRequest(url)));
+		else if (cachedETag != null || cachedLastModified != null) winner = probeOriginFirst(candidates);
+		else winner = race(candidates);
+
+		URL sourceUrl = winner.getKey();
+		HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = winner.getValue();
+		responseCode = response.statusCode();
+
+		// remember the accepted authorization for further requests to the same server
+		String sentAuthorization = response.request().headers().firstValue("Authorization").orElse(null);
+		if (sentAuthorization != null) {
+			if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED) conf.forgetAuthorization(sourceUrl);
+			else conf.rememberAuthorization(sourceUrl, sentAuthorization);
+		}
+
+		eTag = response.headers().firstValue("ETag").orElse(null);
+		lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+		source = new Source(sourceUrl, getValidator());
+
+		if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+			acceptRanges = true;
+			contentLength = parseContentRangeLength(response.headers().firstValue("Content-Range").orElse(null));
+
+			// read the requested byte so that the connection can be reused (keep-alive)
+			readBody(response.body());
+		} else if (responseCode == HttpURLConnection.HTTP_OK) {
+			acceptRanges = false;
+			contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+			probeBody = response.body();
+		} else {
+			acceptRanges = false;
+			contentLength = -1;
+			retryAfter = getRetryAfter(response);
+			readBody(response.body());
+		}
+
+		return responseCode;
+	}
+
+	private HttpRequest newProbeRequest(URL target) throws IOException {
+		HttpRequest.Builder request = newRequest(target).header("Range", "bytes=0-0");
+
+		// the validators of the cached file belong to the URL and are never sent to a mirror
+		if (target.equals(url)) {
+			if (cachedETag != null) request.header("If-None-Match", cachedETag);
+			if (cachedLastModified != null) request.header("If-Modified-Since", cachedLastModified);
+		}
+		return request.build();
+	}
+
+	/**
+	 * Probes the URL before the mirrors. Only the URL can confirm that the cached file is still valid (304),
+	 * so a faster mirror must not win the race against it. The mirrors are only raced when the URL isn't usable
+	 *
+	 * @param candidates	the URL followed by the mirrors to probe
+	 * @return				the winning URL and its response
+	 */
+	private Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> probeOriginFirst(List<URL> candidates) throws IOException {
+
+		HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = null;
+		try {
+			response = send(newProbeRequest(url));
+			if (isUsableProbe(response.statusCode()) || response.statusCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+				return new AbstractMap.SimpleEntry<>(url, response);
+			}
+			logger.log("d", "The server \"" + url + "\" is not usable: HTTP " + response.statusCode(), "Downloader#probeOriginFirst");
+		} catch (IOException ex) {
+			logger.log("d", "The server \"" + url + "\" is not usable: " + ex.getMessage(), "Downloader#probeOriginFirst");
+		}
+		failedSources.add(url);
+
+		try {
+			Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> mirror = race(candidates.subList(1, candidates.size()));
+			if (response != null && !isUsableProbe(mirror.getValue().statusCode())) {
+				// the error of the URL is more meaningful than the one of a mirror
+				cancelBody(mirror.getValue().body());
+				return new AbstractMap.SimpleEntry<>(url, response);
+			}
+			if (response != null) cancelBody(response.body());
+			return mirror;
+		} catch (IOException ex) {
+			if (response == null) throw ex;
+			return new AbstractMap.SimpleEntry<>(url, response);
+		}
+	}
+
+	/**
+	 * Sends the probe to all candidates at the same time. The first usable response wins, the bodies of the
+	 * other responses are discarded. When no server responds usable, a request for authentication (401) or
+	 * the last response is returned
+	 *
+	 * @param candidates	the URLs to probe
+	 * @return				the winning URL and its response
+	 */
+	private Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> race(List<URL> candidates) throws IOException {
+
+		CompletableFuture<Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>>> winner = new CompletableFuture<>();
+		AtomicReference<Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>>> fallback = new AtomicReference<>();
+		AtomicInteger unusable = new AtomicInteger();
+		long start = System.nanoTime();
+
+		for (URL candidate: candidates) {
+			conf.getHttpClient().sendAsync(newProbeRequest(candidate), BodyHandlers.ofPublisher()).whenComplete((response, throwable) -> {
+				boolean usable = response != null && isUsableProbe(response.statusCode());
+				if (!usable) {
+					failedSources.add(candidate);
+					logger.log("d", "The mirror \"" + candidate + "\" is not usable: " + (response != null ? "HTTP " + response.statusCode() : (throwable instanceof CompletionException ? throwable.getCause() : throwable)), "Downloader#race");
+				}
+				if (usable) {
+					if (!winner.complete(new AbstractMap.SimpleEntry<>(candidate, response))) cancelBody(response.body());
+					return;
+				}
+
+				// an error response (like 404) is preferred over a connection error and a request for authentication over other errors
+				if (response != null && winner.isDone()) cancelBody(response.body());
+				else if (response != null) {
+					Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> current = new AbstractMap.SimpleEntry<>(candidate, response);
+					Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> previous = fallback.getAndUpdate(other -> isPreferredFallback(other, response) ? other : current);
+					if (isPreferredFallback(previous, response)) cancelBody(response.body());
+					else if (previous != null) cancelBody(previous.getValue().body());
+				}
+				if (unusable.incrementAndGet() == candidates.size()) {
+					Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> last = fallback.getAndSet(null);
+					if (last != null) winner.complete(last);
+					else winner.completeExceptionally(throwable);
+				}
+			});
+		}
+
+		try {
+			Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> result = winner.get();
+			Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> unused = fallback.getAndSet(null);
+			if (unused != null && unused != result) cancelBody(unused.getValue().body());
+			logger.log("d", "Using the server \"" + result.getKey() + "\" (responded after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms)", "Downloader#race");
+			return result;
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause() instanceof CompletionException ? ex.getCause().getCause() : ex.getCause();
+			if (cause instanceof HttpTimeoutException) throw new SocketTimeoutException("No server responded within " + conf.getReadTimeout() + " seconds");
+			if (cause instanceof IOException) throw (IOException) cause;
+			throw new IOException(cause);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Request was interrupted", ex);
+		}
+	}
+
+	/**
+	 * @return	if the kept response of an unusable server is preferred over the new response
+	 */
+	private static boolean isPreferredFallback(Map.Entry<URL, HttpResponse<Flow.Publisher<List<ByteBuffer>>>> kept, HttpResponse<?> response) {
+		return kept != null && kept.getValue().statusCode() == HttpURLConnection.HTTP_UNAUTHORIZED && response.statusCode() != HttpURLConnection.HTTP_UNAUTHORIZED;
+	}
+
+	/**
+	 * @return	if the validators of the response match the validators of the current server
+	 */
+	private boolean isSameFile(HttpResponse<?> response) {
+		String otherETag = response.headers().firstValue("ETag").orElse(null);
+		String otherLastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+		return (eTag != null && !eTag.startsWith("W/") && eTag.equals(otherETag)) || (lastModified != null && lastModified.equals(otherLastModified));
+	}
+
+	private static boolean isUsableProbe(int code) {
+		return code == HttpURLConnection.HTTP_OK || code == HttpURLConnection.HTTP_PARTIAL || code == HttpURLConnection.HTTP_NOT_MODIFIED;
+	}
+
+	/**
+	 * Switches to the next mirror after the current server failed. The mirror is only used when it
+	 * provides a file with the same size and the same validator (ETag or Last-Modified). When the checksum
+	 * of the file is calculated ({@link #setChecksumAlgorithm(String)}) and verified afterwards, the same size is sufficient
+	 *
+	 * @param failed	the server that failed
+	 * @param cause		the reason of the failure
+	 *
+	 * @return			if the download can be continued with another server
+	 */
+	private synchronized boolean failover(Source failed, IOException cause) {
+
+		// another part already switched to a new server
+		if (source != failed) return true;
+		failedSources.add(failed.url);
+
+		List<URL> candidates = new ArrayList<URL>();
+		candidates.add(url);
+		candidates.addAll(mirrors);
+
+		for (URL candidate: candidates) {
+			if (failedSources.contains(candidate) || aborted) continue;
+
+			try {
+				HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = send(newRequest(candidate).header("Range", "bytes=0-0").build());
+				readBody(response.body());
+
+				long length = parseContentRangeLength(response.headers().firstValue("Content-Range").orElse(null));
+				if (response.statusCode() != HttpURLConnection.HTTP_PARTIAL || length != contentLength) {
+					throw new IOException("Unexpected response (HTTP " + response.statusCode() + ", length " + length + ")");
+				}
+				// without a checksum mixing the bytes of two different files of the same size wouldn't be noticed
+				if (digest == null && !isSameFile(response)) throw new IOException("The file can't be identified as the same file (no matching ETag or Last-Modified)");
+
+				eTag = response.headers().firstValue("ETag").orElse(null);
+				lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+				source = new Source(candidate, getValidator());
+
+				logger.log("w", "Download from \"" + failed.url + "\" failed (" + cause.getMessage() + "). Continuing with the mirror \"" + candidate + "\"", "Downloader#failover");
+				return true;
+			} catch (IOException ex) {
+				logger.log("d", "The mirror \"" + candidate + "\" is not usable: " + ex.getMessage(), "Downloader#failover");
+				failedSources.add(candidate);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Downloads the file into the download directory ({@link InstallConfig#setDownloadDirectory(String)}).
+	 * A probe has to be executed before. The number of concurrent connections can be configured via
+	 * {@link InstallConfig#setDownloadConnections(int)}.
+	 * When a previous download of the same file was interrupted, it will be continued
+	 *
+	 * @return	the downloaded file
+	 *
+	 * @throws IOException	when the download failed. The already downloaded parts are kept for a later resume
+	 */
+	protected File download() throws IOException {
+		return download(new File(conf.getDownloadDir(), getFileName()));
+	}
+
+	/**
+	 * Downloads the file to the given location. The partial file and the state of the download are
+	 * kept next to the target, so the completed file is moved into place with a rename within the same directory.
+	 * A retry continues with the already downloaded bytes. A later call resumes them only when the server sent
+	 * a validator (ETag or Last-Modified) for the file.
+	 * A probe has to be executed before
+	 *
+	 * @param target	the location of the downloaded file
+	 *
+	 * @return	the downloaded file
+	 *
+	 * @throws IOException	when the download failed. The already downloaded parts are kept for a later resume
+	 */
+	protected File download(File target) throws IOException {
+
+		if (responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+			throw new IOException("Unexpected response code " + responseCode + " for url \"" + url + "\"");
+		}
+
+		File directory = target.getAbsoluteFile().getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) throw new IOException("Unable to create the download directory \"" + directory + "\"");
+
+		partialFile = new File(directory, target.getName() + ".part");
+		stateFile = new File(directory, target.getName() + ".part.properties");
+
+		startDeadline();
+		boolean restarted = false;
+		parts = new ArrayList<Part>();
+		for (int attempt = 1; ; attempt++) {
+			aborted = false;
+			long start = System.nanoTime();
+			long resumedBytes;
+			lastProgress.set(start);
+			checksum = null;
+			digestPosition = 0;
+			if (digest != null) digest.reset();
+
+			try {
+				if (!acceptRanges || contentLength <= 0) {
+					// the download cannot be resumed without range requests
+					deleteState();
+					transferredBytes.set(0);
+					resumedBytes = 0;
+					if (progressListener != null) progressListener.onStart(target.getName(), contentLength, 0);
+					downloadSingleStream(partialFile);
+				} else {
+					// a retry continues with the parts in memory. The state file (that requires a validator of the
+					// remote file) is only used to resume the download of a previous process
+					boolean resume = !parts.isEmpty() && partialFile.length() == contentLength;
+					if (!resume && !loadState()) createParts();
+					transferredBytes.set(parts.stream().mapToLong(p -> p.done.get()).sum());
+					lastCheckpoint.set(transferredBytes.get());
+					resumedBytes = transferredBytes.get();
+
+					logger.log("d", "Downloading file with " + parts.size() + " connection(s)" + (transferredBytes.get() > 0 ? ", resuming at byte " + transferredBytes.get() : ""), "Downloader#download");
+					if (progressListener != null) progressListener.onStart(target.getName(), contentLength, transferredBytes.get());
+					downloadParts(partialFile);
+				}
+
+				if (progressListener != null) {
+					progressListener.onProgress(transferredBytes.get(), contentLength);
+					progressListener.onComplete(transferredBytes.get());
+				}
+				downloadNanos = System.nanoTime() - start;
+				downloadedBytes = transferredBytes.get() - resumedBytes;
+
+				Files.move(partialFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				stateFile.delete();
+				parts = new ArrayList<Part>();
+				return target;
+
+			} catch (ArtifactChangedException ex) {
+				// the remote file was replaced in the meantime -> start over with the new file
+				deleteState();
+				if (restarted) throw ex;
+				restarted = true;
+
+				logger.log("d", "Remote file changed during the download. Starting a new download", "Downloader#download");
+				int code = probe();
+				if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) throw ex;
+			} catch (IOException ex) {
+				// the parts continue with the already downloaded bytes
+				saveState();
+				if (!awaitRetry(attempt, ex.getMessage(), -1)) throw ex;
+				failedSources.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return	the size of the file in bytes determined by the probe. If the size is unknown, -1 is returned
+	 */
+	protected long getContentLength() { return contentLength; }
+
+	/**
+	 * @return	the ETag header of the last probe or null when the server didn't send one
+	 */
+	protected String getETag() { return eTag; }
+
+	/**
+	 * @return	the Last-Modified header of the last probe or null when the server didn't send one
+	 */
+	protected String getLastModified() { return lastModified; }
+
+	/**
+	 * @return	the number of bytes that were already downloaded (including the bytes of a resumed download)
+	 */
+	protected long getTransferredBytes() { return transferredBytes.get(); }
+
+	/**
+	 * @return	the number of bytes that were received by the last call of {@link #download(File)} (without the resumed bytes)
+	 */
+	protected long getDownloadedBytes() { return downloadedBytes; }
+
+	/**
+	 * @return	the duration of the last call of {@link #download(File)} in nanoseconds
+	 */
+	protected long getDownloadNanos() { return downloadNanos; }
+
+	/**
+	 * @return	the checksum of the downloaded file as lower case hex string. If no checksum
+	 * 			algorithm was set, null is returned
+	 */
+	protected String getChecksum() { return checksum; }
+
+	/**
+	 * Splits the file into the configured number of parts
+	 */
+	private void createParts() {
+
+		deleteState();
+
+		long maxParts = Math.max(1, contentLength / MIN_PART_SIZE);
+		int count = (int) Math.min(conf.getDownloadConnections(), maxParts);
+		long partSize = (contentLength + count - 1) / count;
+
+		for (int i = 0; i < count; i++) {
+			long start = i * partSize;
+			parts.add(new Part(start, Math.min(contentLength, start + partSize) - 1, 0));
+		}
+	}
+
+	/**
+	 * Downloads the whole file within a single connection
+	 */
+	private void downloadSingleStream(File destination) throws IOException {
+
+		Flow.Publisher<List<ByteBuffer>> body = probeBody;
+		probeBody = null;
+		if (body == null) {
+			HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = send(newRequest(source.url).build());
+			if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+				readBody(response.body());
+				throw new IOException("Unexpected response code " + response.statusCode() + " for url \"" + source.url + "\"");
+			}
+			body = response.body();
+		}
+
+		try (FileChannel out = new RandomAccessFile(destination, "rw").getChannel()) {
+
+			out.truncate(0);
+			Part part = new Part(0, Long.MAX_VALUE - 1, 0);
+			parts.add(part);
+
+			transfer(body, out, part);
+			// without a length (chunked response) the end of the body marks the end of the file
+			if (contentLength >= 0 && part.done.get() != contentLength) {
+				throw new IOException("Received " + part.done.get() + " bytes instead of " + contentLength + " bytes");
+			}
+			finishDigest(out);
+		} catch (IOException ex) {
+			cancelBody(body);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Downloads the missing bytes of all parts concurrently.
+	 * The destination file is preallocated and every part writes to its own position
+	 */
+	private void downloadParts(File destination) throws IOException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(parts.size(), new DaemonThreadFactory("installer-download"));
+
+		try (RandomAccessFile raf = new RandomAccessFile(destination, "rw")) {
+			if (raf.length() != contentLength) raf.setLength(contentLength);
+			FileChannel out = raf.getChannel();
+
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (Part part: parts) {
+				if (part.isComplete()) continue;
+
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						downloadRange(out, part);
+						return null;
+					}
+				}));
+			}
+
+			try {
+				for (Future<Void> future: futures) future.get();
+				finishDigest(out);
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+				throw new IOException(ex.getCause());
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Download was interrupted", ex);
+			} finally {
+				// stop the remaining parts before the file is closed
+				aborted = true;
+				executor.shutdown();
+				try { executor.awaitTermination(10, TimeUnit.SECONDS); } catch (InterruptedException ex) { Thread.currentThread().interrupt(); }
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Downloads the missing bytes of the given part and writes them at the same position into the file.
+	 * The server only responds with the range when the remote file wasn't changed (If-Range)
+	 */
+	private void downloadRange(FileChannel out, Part part) throws IOException {
+
+		while (true) {
+			Source current = source;
+			long start = part.start + part.done.get();
+
+			try {
+				transfer(openRange(current, start, part.end), out, part);
+				if (!part.isComplete()) throw new IOException("Connection closed before the range " + start + "-" + part.end + " was fully received");
+				return;
+			} catch (ArtifactChangedException ex) {
+				throw ex;
+			} catch (IOException ex) {
+				// the already downloaded bytes of the part are kept when continuing with a mirror
+				if (aborted || mirrors.isEmpty() || !failover(current, ex)) throw ex;
+			}
+		}
+	}
+
+	/**
+	 * Downloads a range of the file into memory. A probe has to be executed before
+	 *
+	 * @param start		first byte of the range
+	 * @param end		last byte of the range (inclusive)
+	 *
+	 * @return			the bytes of the range
+	 *
+	 * @throws IOException	when the range couldn't be downloaded or the file was modified on the server
+	 */
+	protected byte[] downloadBytes(long start, long end) throws IOException {
+
+		byte[] bytes = readBody(openRange(source, start, end));
+		if (bytes.length != end - start + 1) throw new IOException("Received " + bytes.length + " bytes instead of the range " + start + "-" + end);
+		return bytes;
+	}
+
+	/**
+	 * Downloads a range of the file and writes it at the same position into the given file.
+	 * A probe has to be executed before
+	 *
+	 * @param start		first byte of the range
+	 * @param end		last byte of the range (inclusive)
+	 * @param out		the file to write to
+	 *
+	 * @throws IOException	when the range couldn't be downloaded or the file was modified on the server
+	 */
+	protected void downloadBytes(long start, long end, FileChannel out) throws IOException {
+
+		Part part = new Part(start, end, 0);
+
+		transfer(openRange(source, start, end), out, part);
+		if (!part.isComplete()) throw new IOException("Connection closed before the range " + start + "-" + end + " was fully received");
+	}
+
+	/**
+	 * @return	if the server supports range requests for the file (determined by the probe)
+	 */
+	protected boolean isRangeSupported() { return acceptRanges && contentLength > 0; }
+
+	/**
+	 * Requests a range of the file. The server only responds with the range when the remote file
+	 * wasn't changed since the probe (If-Range)
+	 *
+	 * @return	the body of the response with the code 206
+	 */
+	private Flow.Publisher<List<ByteBuffer>> openRange(Source source, long start, long end) throws IOException {
+
+		HttpRequest.Builder request = newRequest(source.url).header("Range", "bytes=" + start + "-" + end);
+		String validator = source.validator;
+		if (validator != null) request.header("If-Range", validator);
+
+		HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = send(request.build());
+		int code = response.statusCode();
+		if (code == HttpURLConnection.HTTP_OK && validator != null) {
+			cancelBody(response.body());
+			throw new ArtifactChangedException("The file \"" + source.url + "\" was modified on the server");
+		} else if (code != HttpURLConnection.HTTP_PARTIAL) {
+			cancelBody(response.body());
+			throw new IOException("Server \"" + source.url.getHost() + "\" didn't respond with the requested range " + start + "-" + end + " (HTTP " + code + ")");
+		}
+
+		return response.body();
+	}
+
+	/**
+	 * Writes the body of a response into the missing bytes of the part. The body is written by the
+	 * threads of the HTTP client, this thread only waits until the body was received.
+	 * When no bytes were received within the read timeout, the request is cancelled
+	 */
+	private void transfer(Flow.Publisher<List<ByteBuffer>> body, FileChannel out, Part part) throws IOException {
+
+		PartSubscriber subscriber = new PartSubscriber(out, part);
+		body.subscribe(subscriber);
+
+		long readTimeout = conf.getReadTimeout() * 1000L;
+		while (true) {
+			try {
+				subscriber.result.get(Math.min(readTimeout, 1000), TimeUnit.MILLISECONDS);
+				return;
+			} catch (TimeoutException ex) {
+				if (aborted) {
+					subscriber.cancel();
+					throw new IOException("Download was aborted");
+				}
+				if (System.currentTimeMillis() - subscriber.lastActivity > readTimeout) {
+					subscriber.cancel();
+					throw new SocketTimeoutException("No data received within " + conf.getReadTimeout() + " seconds from \"" + source.url.getHost() + "\"");
+				}
+				if (isPastDeadline(0)) {
+					subscriber.cancel();
+					throw new SocketTimeoutException("The download didn't finish within " + conf.getRetryPolicy().getOverallTimeout() + " seconds");
+				}
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+				throw new IOException(ex.getCause());
+			} catch (InterruptedException ex) {
+				subscriber.cancel();
+				Thread.currentThread().interrupt();
+				throw new IOException("Download was interrupted", ex);
+			}
+		}
+	}
+
+	/**
+	 * Writes the received bytes at the current position of the part
+	 *
+	 * @return	if the part is complete
+	 */
+	private boolean write(FileChannel out, Part part, ByteBuffer buffer) throws IOException {
+
+		// the server may send more bytes than requested
+		long remaining = part.length() - part.done.get();
+		if (buffer.remaining() > remaining) buffer.limit(buffer.position() + (int) remaining);
+
+		ByteBuffer written = buffer.duplicate();
+		long position = part.start + part.done.get();
+
+		while (buffer.hasRemaining()) {
+			int count = out.write(buffer, part.start + part.done.get());
+			part.done.addAndGet(count);
+			long transferred = transferredBytes.addAndGet(count);
+
+			// update the state file from time to time, so that a killed installer can resume
+			long checkpoint = lastCheckpoint.get();
+			if (transferred - checkpoint >= CHECKPOINT_BYTES && lastCheckpoint.compareAndSet(checkpoint, transferred)) saveState();
+
+			reportProgress(transferred);
+		}
+
+		updateDigest(out, written, position);
+		return part.isComplete();
+	}
+
+	/**
+	 * Passes the number of transferred bytes to the progress listener. Only a single thread
+	 * reports the progress within the configured interval
+	 */
+	private void reportProgress(long transferred) {
+
+		if (progressListener == null) return;
+
+		long now = System.nanoTime();
+		long last = lastProgress.get();
+		if (now - last < TimeUnit.MILLISECONDS.toNanos(conf.getProgressInterval()) || !lastProgress.compareAndSet(last, now)) return;
+
+		progressListener.onProgress(transferred, contentLength);
+	}
+
+	/**
+	 * Adds the written bytes to the checksum when they directly follow the bytes that were already
+	 * added. Afterwards the bytes that arrived out of order are read back up to a small limit.
+	 * When another thread is currently calculating the checksum, nothing is done: the bytes will be read back later
+	 *
+	 * @param out		the file
+	 * @param written	buffer containing the bytes that were written
+	 * @param position	position of the bytes within the file
+	 */
+	private void updateDigest(FileChannel out, ByteBuffer written, long position) throws IOException {
+
+		if (digest == null || !digestLock.tryLock()) return;
+
+		try {
+			if (position == digestPosition) {
+				digestPosition += written.remaining();
+				digest.update(written);
+			}
+			readBackDigest(out, BUFFER_SIZE * 16);
+		} finally {
+			digestLock.unlock();
+		}
+	}
+
+	/**
+	 * Adds all remaining bytes of the file to the checksum
+	 */
+	private void finishDigest(FileChannel out) throws IOException {
+
+		if (digest == null) return;
+
+		digestLock.lock();
+		try {
+			readBackDigest(out, Long.MAX_VALUE);
+			checksum = Checksum.toHex(digest.digest());
+		} finally {
+			digestLock.unlock();
+		}
+	}
+
+	/**
+	 * Reads the bytes following the checksum position which were already written back from the file.
+	 * The lock of the digest has to be held
+	 *
+	 * @param maxBytes	maximum number of bytes to read
+	 */
+	private void readBackDigest(FileChannel out, long maxBytes) throws IOException {
+
+		// all bytes up to the first incomplete part are available
+		long available = 0;
+		for (Part part: parts) {
+			available = part.start + part.done.get();
+			if (!part.isComplete()) break;
+		}
+
+		if (available <= digestPosition) return;
+		long end = digestPosition + Math.min(available - digestPosition, maxBytes);
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, end - digestPosition));
+		while (digestPosition < end) {
+			buffer.clear();
+			if (end - digestPosition < buffer.capacity()) buffer.limit((int) (end - digestPosition));
+
+			int count = out.read(buffer, digestPosition);
+			if (count <= 0) throw new IOException("Unable to read the downloaded file for the checksum");
+
+			buffer.flip();
+			digest.update(buffer);
+			digestPosition += count;
+		}
+	}
+
+	/**
+	 * Reads the state of an interrupted download. The state is only used when the
+	 * remote file is still the same
+	 *
+	 * @return	if the download can be resumed
+	 */
+	private boolean loadState() {
+
+		if (!stateFile.isFile() || !partialFile.isFile()) return false;
+
+		Properties state = new Properties();
+		try (InputStream in = new FileInputStream(stateFile)) {
+			state.load(in);
+
+			boolean sameFile = url.toString().equals(state.getProperty("url"))
+					&& contentLength == Long.parseLong(state.getProperty("length", "-1"))
+					&& partialFile.length() == contentLength
+					&& getValidator() != null
+					&& getValidator().equals(state.getProperty("validator"));
+
+			if (!sameFile) {
+				logger.log("d", "Discarding the partial download of \"" + url + "\" because the remote file changed", "Downloader#loadState");
+				return false;
+			}
+
+			List<Part> savedParts = new ArrayList<Part>();
+			int count = Integer.parseInt(state.getProperty("parts", "0"));
+			for (int i = 0; i < count; i++) {
+				savedParts.add(new Part(
+						Long.parseLong(state.getProperty("part." + i + ".start")),
+						Long.parseLong(state.getProperty("part." + i + ".end")),
+						Long.parseLong(state.getProperty("part." + i + ".done"))
+				));
+			}
+			if (savedParts.isEmpty()) return false;
+
+			parts = savedParts;
+			return true;
+		} catch (Exception ex) {
+			logger.log("w", "Unable to read the state of the previous download: " + ex.getMessage(), "Downloader#loadState");
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the progress of all parts into the state file. The state is written to a temporary
+	 * file first and moved afterwards, so that a killed installer doesn't leave a corrupt state
+	 */
+	private synchronized void saveState() {
+
+		if (stateFile == null || !acceptRanges || parts.isEmpty() || getValidator() == null) return;
+
+		Properties state = new Properties();
+		state.setProperty("url", url.toString());
+		state.setProperty("length", String.valueOf(contentLength));
+		state.setProperty("validator", getValidator());
+		state.setProperty("parts", String.valueOf(parts.size()));
+		for (int i = 0; i < parts.size(); i++) {
+			state.setProperty("part." + i + ".start", String.valueOf(parts.get(i).start));
+			state.setProperty("part." + i + ".end", String.valueOf(parts.get(i).end));
+			state.setProperty("part." + i + ".done", String.valueOf(parts.get(i).done.get()));
+		}
+
+		File tmp = new File(stateFile.getPath() + ".tmp");
+		try {
+			try (OutputStream out = new FileOutputStream(tmp)) {
+				state.store(out, "State of an interrupted download");
+			}
+			Files.move(tmp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			logger.log("w", "Unable to save the state of the download: " + ex.getMessage(), "Downloader#saveState");
+		}
+	}
+
+	private void deleteState() {
+		if (stateFile != null) stateFile.delete();
+		if (partialFile != null) partialFile.delete();
+		parts = new ArrayList<Part>();
+	}
+
+	/**
+	 * Returns the value for the "If-Range" header. Weak ETags must not be used for range requests
+	 *
+	 * @return	the strong ETag or the last modification date of the file. When the server doesn't provide
+	 * 			any of them, null is returned
+	 */
+	private String getValidator() {
+		if (eTag != null && !eTag.startsWith("W/")) return eTag;
+		return lastModified;
+	}
+
+	/**
+	 * Returns the name of the file within the download directory. A hash of the URL is prepended
+	 * to the name so that different URLs don't share the same partial download
+	 */
+	private String getFileName() {
+
+		String path = url.getPath();
+		String name = path.substring(path.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+		if (name.isEmpty()) name = "download";
+
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.toString().getBytes(StandardCharsets.UTF_8));
+			return Checksum.toHex(hash).substring(0, 8) + "-" + name;
+		} catch (NoSuchAlgorithmException ex) {
+			return Integer.toHexString(url.toString().hashCode()) + "-" + name;
+		}
+	}
+
+	/**
+	 * Downloads a small text file (like a checksum file) completely into memory
+	 *
+	 * @return	the content of the file
+	 *
+	 * @throws IOException	when the file couldn't be downloaded
+	 */
+	protected String downloadText() throws IOException {
+
+		startDeadline();
+		for (int attempt = 1; ; attempt++) {
+			HttpResponse<Flow.Publisher<List<ByteBuffer>>> response;
+			byte[] body;
+			try {
+				response = send(newRequest(url).build());
+				body = readBody(response.body());
+			} catch (IOException ex) {
+				if (awaitRetry(attempt, ex.getMessage(), -1)) continue;
+				throw ex;
+			}
+
+			int code = response.statusCode();
+			if (code == HttpURLConnection.HTTP_OK) return new String(body, StandardCharsets.UTF_8);
+			if (!conf.getRetryPolicy().isRetryable(code) || !awaitRetry(attempt, "HTTP " + code, getRetryAfter(response))) {
+				throw new IOException("Unexpected response code " + code + " for url \"" + url + "\"");
+			}
+		}
+	}
+
+	/**
+	 * Starts the overall timeout of the retry policy with the first request
+	 */
+	private void startDeadline() {
+		int timeout = conf.getRetryPolicy().getOverallTimeout();
+		if (deadline == null && timeout > 0) deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeout);
+	}
+
+	/**
+	 * @param millis	time from now in milliseconds
+	 * @return			if the overall timeout is exceeded at the given time
+	 */
+	private boolean isPastDeadline(long millis) {
+		return deadline != null && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis) - deadline >= 0;
+	}
+
+	/**
+	 * Waits before the next attempt of a failed request
+	 *
+	 * @param attempt		the number of the failed attempt (starting with 1)
+	 * @param reason		the reason of the failure for the log
+	 * @param retryAfter	the time in milliseconds the server asked to wait (-1 if unknown)
+	 *
+	 * @return				if the request should be repeated. This is not the case when all attempts are used up or the overall timeout would be exceeded
+	 */
+	private boolean awaitRetry(int attempt, String reason, long retryAfter) {
+
+		RetryPolicy policy = conf.getRetryPolicy();
+		if (attempt >= policy.getMaxAttempts()) return false;
+
+		long backoff = policy.getBackoff(attempt, retryAfter);
+		if (isPastDeadline(backoff)) return false;
+
+		logger.log("w", "Attempt " + attempt + " of " + policy.getMaxAttempts() + " for \"" + url + "\" failed (" + reason + "). Retrying in " + backoff + " ms", "Downloader#awaitRetry");
+		try {
+			Thread.sleep(backoff);
+			return true;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * @return	the waiting time of the "Retry-After" header in milliseconds or -1. Only the format in seconds is supported
+	 */
+	private static long getRetryAfter(HttpResponse<?> response) {
+		try {
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(response.headers().firstValue("Retry-After").orElse("-1").trim()));
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	private HttpRequest.Builder newRequest(URL target) throws IOException {
+		HttpRequest.Builder request;
+		try {
+			request = HttpRequest.newBuilder(target.toURI()).timeout(Duration.ofSeconds(conf.getReadTimeout()));
+		} catch (URISyntaxException | IllegalArgumentException ex) {
+			throw new IOException("Invalid url \"" + target + "\"", ex);
+		}
+
+		// explicit credentials are only sent to the server they were set for (never to a mirror on another server)
+		String authorization = getAuthorization(target);
+		if (authorization != null) {
+			request.header("Authorization", authorization);
+			request.header("X-Requested-With", "XMLHttpRequest");
+		}
+		return request;
+	}
+
+	/**
+	 * Sends the request with the shared HTTP client. The body of the response has to be
+	 * consumed ({@link #readBody(Flow.Publisher)}) or cancelled ({@link #cancelBody(Flow.Publisher)})
+	 */
+	private HttpResponse<Flow.Publisher<List<ByteBuffer>>> send(HttpRequest request) throws IOException {
+		try {
+			return conf.getHttpClient().send(request, BodyHandlers.ofPublisher());
+		} catch (HttpTimeoutException ex) {
+			throw new SocketTimeoutException("No response within " + conf.getReadTimeout() + " seconds for the url \"" + request.uri() + "\"");
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Request was interrupted", ex);
+		}
+	}
+
+	/**
+	 * Reads the complete (small) body of a response into memory
+	 */
+	private byte[] readBody(Flow.Publisher<List<ByteBuffer>> body) throws IOException {
+
+		BodySubscriber<byte[]> subscriber = BodySubscribers.ofByteArray();
+		body.subscribe(subscriber);
+
+		try {
+			return subscriber.getBody().toCompletableFuture().get(conf.getReadTimeout(), TimeUnit.SECONDS);
+		} catch (TimeoutException ex) {
+			cancelBody(body);
+			throw new SocketTimeoutException("No data received within " + conf.getReadTimeout() + " seconds from \"" + source.url.getHost() + "\"");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+			throw new IOException(ex.getCause());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Request was interrupted", ex);
+		}
+	}
+
+	/**
+	 * Discards the body of a response without reading it
+	 */
+	private static void cancelBody(Flow.Publisher<List<ByteBuffer>> body) {
+		body.subscribe(new Flow.Subscriber<List<ByteBuffer>>() {
+			@Override public void onSubscribe(Flow.Subscription subscription) { subscription.cancel(); }
+			@Override public void onNext(List<ByteBuffer> item) { }
+			@Override public void onError(Throwable throwable) { }
+			@Override public void onComplete() { }
+		});
+	}
+
+	private void closeProbe() {
+		if (probeBody != null) cancelBody(probeBody);
+		probeBody = null;
+	}
+
+	/**
+	 * Parses the complete length of the file out of a "Content-Range" header (bytes 0-0/12345)
+	 *
+	 * @return	the length or -1 when the length is unknown
+	 */
+	private static long parseContentRangeLength(String contentRange) {
+		if (contentRange == null || !contentRange.contains("/")) return -1;
+
+		try {
+			return Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1).trim());
+		} catch (NumberFormatException ex) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes the body of a response into a part of the file. Only one buffer is requested at a time,
+	 * so the HTTP client doesn't receive faster than the bytes can be written
+	 */
+	private class PartSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+
+		private final FileChannel out;
+		private final Part part;
+		final CompletableFuture<Void> result = new CompletableFuture<Void>();
+		volatile long lastActivity = System.currentTimeMillis();
+		private volatile Flow.Subscription subscription;
+
+		private final BandwidthLimiter limiter = conf.getBandwidthLimiter();
+
+		PartSubscriber(FileChannel out, Part part) {
+			this.out = out;
+			this.part = part;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> buffers) {
+			lastActivity = System.currentTimeMillis();
+			if (result.isDone()) return;
+
+			long received = buffers.stream().mapToLong(ByteBuffer::remaining).sum();
+			try {
+				for (ByteBuffer buffer: buffers) {
+					if (aborted) throw new IOException("Download was aborted");
+					if (write(out, part, buffer)) {
+						subscription.cancel();
+						result.complete(null);
+						return;
+					}
+				}
+
+				// with a bandwidth limit the next bytes are requested after the bucket was refilled
+				long delay = limiter != null ? limiter.reserve(received) : 0;
+				if (delay <= 0) {
+					subscription.request(1);
+				} else {
+					// the waiting time doesn't count as idle time of the connection
+					lastActivity = System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(delay);
+					CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+						if (!result.isDone()) subscription.request(1);
+					});
+				}
+			} catch (IOException ex) {
+				subscription.cancel();
+				result.completeExceptionally(ex);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) { result.completeExceptionally(throwable); }
+
+		@Override
+		public void onComplete() { result.complete(null); }
+
+		void cancel() {
+			Flow.Subscription subscription = this.subscription;
+			if (subscription != null) subscription.cancel();
+			result.completeExceptionally(new IOException("Download was cancelled"));
+		}
+	}
+
+	/**
+	 * The server from which the file is downloaded together with the validator of its file
+	 */
+	private static class Source {
+
+		final URL url;
+		final String validator;
+
+		Source(URL url, String validator) {
+			this.url = url;
+			this.validator = validator;
+		}
+	}
+
+	/**
+	 * A byte range (inclusive) of the file and the number of bytes that were already written
+	 */
+	private static class Part {
+
+		final long start;
+		final long end;
+		final AtomicLong done;
+
+		Part(long start, long end, long done) {
+			this.start = start;
+			this.end = end;
+			this.done = new AtomicLong(done);
+		}
+
+		long length() { return end - start + 1; }
+		boolean isComplete() { return done.get() >= length(); }
+	}
+
+	/**
+	 * Thrown when the remote file doesn't match the partial download anymore
+	 */
+	private static class ArtifactChangedException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		ArtifactChangedException(String message) { super(message); }
+	}
+
+}
@@ -0,0 +1,139 @@
+package de.rpjosh.installer;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Operations on the file system (like setting the permissions of files) that are executed within the JVM
+ * instead of starting a process for every operation.
+ * On file systems without POSIX permissions (Windows) the permissions are not changed
+ */
+public class FileOperations {
+
+	private FileOperations() { }
+
+	/**
+	 * Makes the file executable for everybody who is allowed to read the file (like "chmod +x")
+	 *
+	 * @param file			the file
+	 * @throws IOException	when the permissions couldn't be changed
+	 */
+	public static void makeExecutable(Path file) throws IOException {
+
+		if (!isPosix(file)) return;
+
+		Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+		if (permissions.contains(PosixFilePermission.OWNER_READ)) permissions.add(PosixFilePermission.OWNER_EXECUTE);
+		if (permissions.contains(PosixFilePermission.GROUP_READ)) permissions.add(PosixFilePermission.GROUP_EXECUTE);
+		if (permissions.contains(PosixFilePermission.OTHERS_READ)) permissions.add(PosixFilePermission.OTHERS_EXECUTE);
+		Files.setPosixFilePermissions(file, permissions);
+	}
+
+	/**
+	 * Sets the permissions of a single file
+	 *
+	 * @param file			the file
+	 * @param permissions	the permissions in the format of "ls -l" like "rwxr-xr-x"
+	 *
+	 * @throws IOException	when the permissions couldn't be changed
+	 */
+	public static void setPermissions(Path file, String permissions) throws IOException {
+		if (isPosix(file)) Files.setPosixFilePermissions(file, PosixFilePermissions.fromString(permissions));
+	}
+
+	/**
+	 * Sets the permissions of all files and directories within the directory (including the directory itself)
+	 * in a single walk through the file tree
+	 *
+	 * @param directory				the directory
+	 * @param filePermissions		the permissions for files like "rw-r--r--"
+	 * @param directoryPermissions	the permissions for directories like "rwxr-xr-x"
+	 *
+	 * @return						the number of changed files and directories
+	 *
+	 * @throws IOException			when the permissions couldn't be changed
+	 */
+	public static int setPermissionsRecursive(Path directory, String filePermissions, String directoryPermissions) throws IOException {
+
+		if (!Files.isDirectory(directory) || !isPosix(directory)) return 0;
+
+		Set<PosixFilePermission> forFiles = EnumSet.copyOf(PosixFilePermissions.fromString(filePermissions));
+		Set<PosixFilePermission> forDirectories = EnumSet.copyOf(PosixFilePermissions.fromString(directoryPermissions));
+		int[] changed = { 0 };
+
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+				// the directory has to be accessible before its content is visited
+				changed[0] += apply(dir, forDirectories);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				// symbolic links are not followed. Their permissions can't be changed
+				if (attributes.isRegularFile()) changed[0] += apply(file, forFiles);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		return changed[0];
+	}
+
+	/**
+	 * Deletes the directory with all its content (like "rm -r"). Symbolic links are deleted, but not followed
+	 *
+	 * @param directory		the directory
+	 * @throws IOException	when a file couldn't be deleted
+	 */
+	public static void deleteRecursive(Path directory) throws IOException {
+
+		if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) return;
+
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException ex) throws IOException {
+				if (ex != null) throw ex;
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Sets the permissions only when they differ, so unchanged files are not modified
+	 */
+	private static int apply(Path path, Set<PosixFilePermission> permissions) throws IOException {
+		PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+		if (view.readAttributes().permissions().equals(permissions)) return 0;
+
+		view.setPermissions(permissions);
+		return 1;
+	}
+
+	/**
+	 * @return	if the file system of the path supports POSIX permissions
+	 */
+	private static boolean isPosix(Path path) throws IOException {
+		return Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class);
+	}
+
+}
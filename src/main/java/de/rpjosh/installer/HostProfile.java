@@ -0,0 +1,328 @@
+package de.rpjosh.installer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.Preferences;
+
+import de.rpjosh.installer.InstallConfig.OSType;
+
+/**
+ * Capabilities of the machine the installer is running on (root privileges, systemd, available commands).
+ * The privileges and systemd are probed concurrently in the background as soon as the profile is created. Commands are searched
+ * concurrently when they are requested. Every capability is probed only once per run and without starting a process where possible.
+ *
+ * The capabilities that don't depend on the privileges of the installer are additionally stored in the cache directory
+ * of the user. The stored profile is discarded after {@value #MAX_AGE_HOURS} hours or when the operating system,
+ * the user, the PATH or the boot of the machine changed. A command that was missing is always searched again,
+ * because it may have been installed in the meantime
+ */
+public class HostProfile {
+
+	// increase when the format or the meaning of the stored values changes
+	private static final int VERSION = 1;
+	private static final int MAX_AGE_HOURS = 24;
+
+	private static final ExecutorService probes = Executors.newCachedThreadPool(new DaemonThreadFactory("installer-host"));
+	private static HostProfile profile;
+
+	private final File file;
+	private final Properties values = new Properties();
+	private final CompletableFuture<Boolean> root;
+	private final CompletableFuture<Boolean> systemd;
+	private final Map<String, CompletableFuture<Boolean>> commands = new ConcurrentHashMap<String, CompletableFuture<Boolean>>();
+	// if values were probed that are not saved yet
+	private boolean modified = false;
+
+	private HostProfile(File file) {
+		this.file = file;
+		this.load();
+
+		root = CompletableFuture.supplyAsync(() -> InstallConfig.getOsType() == OSType.WINDOWS ? this.isAdministrator() : this.getUserId() == 0, probes);
+		systemd = CompletableFuture.supplyAsync(this::probeSystemd, probes);
+	}
+
+	/**
+	 * @return	the profile of this machine
+	 */
+	public static synchronized HostProfile get() {
+		if (profile == null) profile = new HostProfile(getDefaultLocation());
+		return profile;
+	}
+
+	/**
+	 * Checks if the installer has administrative privileges (root under Linux).
+	 * The result is never stored because it depends on how the installer was started
+	 *
+	 * @return	if the installer is run with administrative privileges
+	 */
+	protected boolean isRoot() {
+		return root.join();
+	}
+
+	/**
+	 * [Linux] Checks if systemd is the init system
+	 *
+	 * @return	if systemd is running
+	 */
+	protected boolean hasSystemd() {
+		boolean available = systemd.join();
+		this.save();
+		return available;
+	}
+
+	private boolean probeSystemd() {
+		String value = values.getProperty("systemd");
+		if (value == null) {
+			value = String.valueOf(Files.isDirectory(Paths.get("/run/systemd/system/")));
+			this.put("systemd", value);
+		}
+		return Boolean.parseBoolean(value);
+	}
+
+	/**
+	 * Starts the search of the commands in the background, so that they are already known when they are needed
+	 *
+	 * @param commands	the names of the commands
+	 */
+	protected void probe(Collection<String> commands) {
+		for (String command: commands) this.lookup(command);
+	}
+
+	/**
+	 * Checks if a command can be found in the directories of the PATH variable (like "which")
+	 *
+	 * @param command	the name of the command
+	 * @return			if the command is available
+	 */
+	protected boolean isCommandAvailable(String command) {
+		boolean available = this.lookup(command).join();
+		this.save();
+		return available;
+	}
+
+	/**
+	 * Returns the first command of the list that is available
+	 *
+	 * @param commands	the names of the commands in the order of preference
+	 * @return			the name of the command or null when none of the commands is available
+	 */
+	protected String getFirstAvailableCommand(Collection<String> commands) {
+		this.probe(commands);
+		try {
+			for (String command: commands) {
+				if (this.lookup(command).join()) return command;
+			}
+			return null;
+		} finally {
+			this.save();
+		}
+	}
+
+	/**
+	 * Returns the availability of a command. A stored missing command is searched again
+	 */
+	private CompletableFuture<Boolean> lookup(String command) {
+		return commands.computeIfAbsent(command, name -> CompletableFuture.supplyAsync(() -> {
+			if (Boolean.parseBoolean(values.getProperty("command." + name))) return true;
+
+			boolean available = this.findCommand(name) != null;
+			this.put("command." + name, String.valueOf(available));
+			return available;
+		}, probes));
+	}
+
+	/**
+	 * Searches the command in the directories of the PATH variable
+	 *
+	 * @return	the path of the command or null when the command wasn't found
+	 */
+	private Path findCommand(String command) {
+
+		String path = System.getenv("PATH");
+		if (path == null) return null;
+
+		// on Windows the file extension is optional (PATHEXT)
+		String[] extensions = { "" };
+		if (InstallConfig.getOsType() == OSType.WINDOWS && System.getenv("PATHEXT") != null) extensions = ("" + File.pathSeparator + System.getenv("PATHEXT")).split(File.pathSeparator);
+
+		for (String directory: path.split(File.pathSeparator)) {
+			if (directory.isBlank()) continue;
+			for (String extension: extensions) {
+				try {
+					Path candidate = Paths.get(directory, command + extension.toLowerCase());
+					if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) return candidate;
+				} catch (Exception ex) { /* invalid entry in PATH */ }
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * [Linux] Returns the effective user id of the installer without starting a process
+	 *
+	 * @return	the user id or -1 if the id couldn't be determined
+	 */
+	private long getUserId() {
+
+		// Uid:	<real>	<effective>	<saved>	<file system>
+		try {
+			for (String line: Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+				if (line.startsWith("Uid:")) return Long.parseLong(line.substring(4).trim().split("\\s+")[1]);
+			}
+		} catch (Exception ex) { /* no proc file system */ }
+
+		// a new file is owned by the effective user
+		Path test = null;
+		try {
+			test = Files.createTempFile("installer-uid", ".tmp");
+			return ((Number) Files.getAttribute(test, "unix:uid")).longValue();
+		} catch (Exception ex) {
+			return -1;
+		} finally {
+			try { if (test != null) Files.deleteIfExists(test); } catch (IOException ex) { }
+		}
+	}
+
+	/**
+	 * [Windows] Checks if the user is in the administrator group and the installer was started with administrative privileges
+	 */
+	private boolean isAdministrator() {
+
+		// in the first step it will be check if the user is in the admin group (will print an unavoidable warning ...)
+		// only when setting the key HKEY_LOCAL_MACHINE\SOFTWARE\JavaSoft\Prefs in the registry no warning would be printed
+		boolean isAdminGroup = false;
+		String groups[] = (new com.sun.security.auth.module.NTSystem()).getGroupIDs();
+		for (String group : groups) {
+			if (group.equals("S-1-5-32-544")) isAdminGroup = true;
+		}
+
+		if (!isAdminGroup) return false;
+
+		// to check if the user has started the installer with administrative privileges, a system property will be tried to write
+		// when an error occurs, the user has no administrative privileges / has the installer not started with these rights
+		Preferences preferences = Preferences.systemRoot();
+		synchronized (System.err) {
+			PrintStream err = System.err;
+			System.setErr(new PrintStream(new OutputStream() {
+				@Override
+				public void write(int b) { }
+			}));
+
+			try {
+				preferences.put("foo", "bar");	// Windows
+				preferences.remove("foo");
+				preferences.flush(); 			// Linux
+				return true;
+			} catch (Exception ex) {
+				return false;
+			} finally {
+				System.setErr(err);
+			}
+		}
+	}
+
+	/**
+	 * Reads the stored profile. It's ignored when it's outdated or was created on another environment
+	 */
+	private void load() {
+
+		if (!file.isFile()) return;
+
+		Properties stored = new Properties();
+		long created;
+		try (InputStream in = new FileInputStream(file)) {
+			stored.load(in);
+			created = Long.parseLong(stored.getProperty("created", "0"));
+		} catch (Exception ex) { return; }
+
+		if (!getEnvironmentKey().equals(stored.getProperty("key")) || System.currentTimeMillis() - created > TimeUnit.HOURS.toMillis(MAX_AGE_HOURS)) return;
+
+		values.putAll(stored);
+	}
+
+	/**
+	 * Remembers a probed value until the profile is saved
+	 */
+	private synchronized void put(String name, String value) {
+
+		if (values.isEmpty()) {
+			values.setProperty("key", getEnvironmentKey());
+			values.setProperty("created", String.valueOf(System.currentTimeMillis()));
+		}
+		values.setProperty(name, value);
+		modified = true;
+	}
+
+	/**
+	 * Writes the profile when new values were probed. A failure is ignored because the values are probed again on the next run
+	 */
+	private synchronized void save() {
+
+		if (!modified) return;
+		modified = false;
+
+		try {
+			file.getParentFile().mkdirs();
+			File temp = new File(file.getPath() + ".tmp");
+			try (OutputStream out = new FileOutputStream(temp)) {
+				values.store(out, "Capabilities of the machine (probed by the installer)");
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (Exception ex) { /* not required */ }
+	}
+
+	/**
+	 * @return	a hash of everything that invalidates the stored profile when it changes
+	 */
+	private static String getEnvironmentKey() {
+
+		String bootId = "";
+		try {
+			List<String> lines = Files.readAllLines(Paths.get("/proc/sys/kernel/random/boot_id"), StandardCharsets.UTF_8);
+			if (!lines.isEmpty()) bootId = lines.get(0);
+		} catch (Exception ex) { /* not a Linux system */ }
+
+		String key = VERSION + "\n" + System.getProperty("os.name") + "\n" + System.getProperty("os.arch") + "\n" + System.getProperty("user.name")
+				+ "\n" + System.getenv("PATH") + "\n" + bootId;
+		try {
+			return Checksum.toHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException ex) { return String.valueOf(key.hashCode()); }
+	}
+
+	/**
+	 * @return	the location of the stored profile within the cache directory of the user
+	 */
+	private static File getDefaultLocation() {
+
+		if (InstallConfig.getOsType() == OSType.WINDOWS && System.getenv("LOCALAPPDATA") != null) {
+			return new File(System.getenv("LOCALAPPDATA") + "/rpjosh-installer/host.properties");
+		}
+
+		String cacheHome = System.getenv("XDG_CACHE_HOME");
+		if (cacheHome == null || cacheHome.isBlank()) cacheHome = System.getProperty("user.home") + "/.cache";
+
+		return new File(cacheHome + "/rpjosh-installer/host.properties");
+	}
+
+}
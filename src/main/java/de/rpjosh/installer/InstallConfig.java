@@ -1,17 +1,23 @@
 package de.rpjosh.installer;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipException;
 
 /**
  *  Define configuration options for the installation
@@ -66,6 +72,32 @@ public class InstallConfig {
 	protected char[] authUsername = null;
 	protected char[] authPassword = null;
 	protected boolean allowAskForBasicAuth = false;
+	protected boolean preemptiveBasicAuth = false;
+	// origin (https://host:443) | value of the authorization header that was accepted by the server
+	private final Map<String, String> authorizations = new HashMap<String, String>();
+	protected List<String> downloadMirrors = new ArrayList<String>();
+	private int downloadConnections = 4;
+	private String downloadDir = null;
+	private long downloadCacheSize = 512L * 1024 * 1024;
+	protected String checksumAlgorithm = null;
+	protected String checksum = null;
+	protected String checksumURL = null;
+	protected boolean deltaUpdate = false;
+	protected List<Artifact> artifacts = new ArrayList<Artifact>();
+	private int artifactDownloads = 4;
+	private int connectTimeout = 15;
+	private int readTimeout = 30;
+	private HttpClient httpClient = null;
+	private RetryPolicy retryPolicy = new RetryPolicy(3, 1000, 15000, 0);
+	private ProgressListener progressListener = new ConsoleProgressListener();
+	private long progressInterval = 450;
+	protected int rolloutWindow = 0;
+	private long bandwidthLimit = 0;
+	private BandwidthLimiter bandwidthLimiter = null;
+	// files written by the current installation (set by the installer)
+	protected InstallLedger ledger = null;
+	// the new jar file while it's staged and not moved to its location yet (set by the installer)
+	protected File stagedJarFile = null;
 	
 	private boolean createDesktopEntry = false;
 	private String desktopWindowsICO = "";
@@ -84,6 +116,7 @@ public class InstallConfig {
 	private int initialHeapSize = 0;
 	
 	protected boolean killRunningInstances = true;
+	private int keptVersions = 0;
 	
 	// ----- //
 	
@@ -187,6 +220,27 @@ public class InstallConfig {
 		this.killRunningInstances = kill;
 	}
 	
+	/**
+	 * [Linux] Installs every version of the program side by side into "versions/&lt;version&gt;/" within the application directory.
+	 * The launcher starts the program through the symbolic link "current", which is switched to the new version
+	 * with an atomic rename. The most recently activated versions are kept for a rollback ({@link Installer#activateVersion(String)}).
+	 * Ignored for a portable installation. Defaults to 0 (the program is installed directly into the application directory)
+	 * 
+	 * @param count		Number of versions to keep (including the active version)
+	 */
+	public void setKeepVersions(int count) {
+		if (count < 0) logger.log("w", "The number of kept versions must be greater or equal 0", "setKeepVersions");
+		else this.keptVersions = count;
+	}
+	protected int getKeptVersions() { return keptVersions; }
+	
+	/**
+	 * @return	if the versions are installed side by side ({@link #setKeepVersions(int)})
+	 */
+	protected boolean isVersioned() {
+		return keptVersions > 0 && !isPortable && InstallConfig.getOsType() == OSType.LINUX;
+	}
+	
 	
 	/**
 	 * Setup fonts that should be installed (the fonts has to be in the .ttf format)
@@ -234,6 +288,66 @@ public class InstallConfig {
 		this.allowAskForBasicAuth = askForBasicAuth;
 	}
 	
+	/**
+	 * Sends the basic auth credentials already with the first request instead of waiting for a "401 Unauthorized" response.
+	 * This saves a round trip for every download when the webserver always requires authentication.
+	 * Only has an effect if the user and the password were set with {@link #setDownloadURLForProgramm(String, char[], char[], boolean)}
+	 * 
+	 * @param preemptive	Whether the credentials should be sent with the first request
+	 */
+	public void setPreemptiveBasicAuth(boolean preemptive) {
+		this.preemptiveBasicAuth = preemptive;
+	}
+	
+	/**
+	 * Sets mirrors from which the file can be downloaded as well. The URLs are handled like the URL of
+	 * {@link #setDownloadURLForProgramm(String, char[], char[], boolean, String)}, so the operating system, the architecture
+	 * and the file ending are added when they are added to the main URL.
+	 * The fastest responding server is used for the download. When it fails, the download is continued from the next mirror
+	 * 
+	 * @param urls		URLs of the mirrors in the order of preference
+	 */
+	public void setDownloadMirrors(String... urls) {
+		this.downloadMirrors = new ArrayList<String>(Arrays.asList(urls));
+	}
+	
+	/**
+	 * Returns the authorization that was accepted by the server of the URL during this installation
+	 * 
+	 * @param url	URL of the request
+	 * @return		value of the authorization header or null
+	 */
+	protected synchronized String getAuthorization(URL url) {
+		return authorizations.get(getOrigin(url));
+	}
+	
+	/**
+	 * Remembers that the server accepted the authorization. All further requests to the same
+	 * origin (protocol, host and port) are sent with it
+	 * 
+	 * @param url				URL of the request
+	 * @param authorization		value of the authorization header
+	 */
+	protected synchronized void rememberAuthorization(URL url, String authorization) {
+		authorizations.put(getOrigin(url), authorization);
+	}
+	
+	/**
+	 * Forgets the authorization for the server of the URL (after it was rejected)
+	 */
+	protected synchronized void forgetAuthorization(URL url) {
+		authorizations.remove(getOrigin(url));
+	}
+	
+	/**
+	 * @param url	the URL
+	 * @return		the origin of the URL (protocol, host and port) like "https://example.com:443"
+	 */
+	protected static String getOrigin(URL url) {
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+	}
+	
 	/**
 	 * Installs the executable from the local file systems instead of downloading the file
 	 * 
@@ -246,6 +360,277 @@ public class InstallConfig {
 	
 	protected boolean getOffline() { return offline; }
 	
+	/**
+	 * Sets the maximum number of connections that are used in parallel to download the executable.
+	 * When the server supports range requests, the file will be split into multiple parts which are
+	 * downloaded concurrently. Otherwise a single connection is used. Defaults to 4
+	 * 
+	 * @param connections	Number of concurrent connections (1 disables the parallel download)
+	 */
+	public void setDownloadConnections(int connections) {
+		if (connections < 1) logger.log("w", "The number of download connections must be greater or equal 1", "setDownloadConnections");
+		else this.downloadConnections = connections;
+	}
+	protected int getDownloadConnections() { return downloadConnections; }
+	
+	/**
+	 * Adds an additional file (like a library of the program) that is downloaded together with the executable into a subdirectory
+	 * of the application directory. Jar files are added to the class path of the launch script, so they don't have to be included into the executable.
+	 * The URL is used as it is (the operating system and the architecture are not added). For an offline installation the URL is the path of the file in the file system
+	 * 
+	 * @param url			URL of the file
+	 * @param directory		Subdirectory of the application directory like "lib/"
+	 */
+	public void addArtifact(String url, String directory) {
+		this.addArtifact(url, directory, null, null);
+	}
+	
+	/**
+	 * Adds an additional file (like a library of the program) that is downloaded together with the executable into a subdirectory
+	 * of the application directory. The file is only downloaded again when the checksum of the installed file doesn't match.
+	 * See {@link #addArtifact(String, String)}
+	 * 
+	 * @param url			URL of the file
+	 * @param directory		Subdirectory of the application directory like "lib/"
+	 * @param algorithm		Algorithm of the checksum: SHA-256 or SHA-512
+	 * @param checksum		The expected checksum as hex string
+	 */
+	public void addArtifact(String url, String directory, String algorithm, String checksum) {
+		if (checksum != null) {
+			algorithm = normalizeChecksumAlgorithm(algorithm);
+			if (algorithm == null) return;
+			checksum = checksum.strip().toLowerCase();
+		} else algorithm = null;
+		
+		try {
+			artifacts.add(new Artifact(url, directory, algorithm, checksum));
+		} catch (IllegalArgumentException ex) {
+			logger.log("w", ex.getMessage(), "addArtifact");
+		}
+	}
+	
+	/**
+	 * Sets the maximum number of additional files ({@link #addArtifact(String, String)}) that are downloaded at the same time. Defaults to 4
+	 * 
+	 * @param count		Number of concurrent downloads
+	 */
+	public void setParallelArtifactDownloads(int count) {
+		if (count < 1) logger.log("w", "The number of parallel downloads must be greater or equal 1", "setParallelArtifactDownloads");
+		else this.artifactDownloads = count;
+	}
+	protected int getParallelArtifactDownloads() { return artifactDownloads; }
+	
+	/**
+	 * Sets the directory in which the executable is downloaded to. An interrupted download is kept in this
+	 * directory and will be resumed by the next installation run when the file on the server didn't change.
+	 * Defaults to ~/.cache/Company/ShortName/ (Linux) or %LOCALAPPDATA%/Company/ShortName/download/ (Windows)
+	 * 
+	 * @param dir	Directory for the downloads
+	 */
+	public void setDownloadDirectory(String dir) {
+		this.downloadDir = dir.replace("\\", "/");
+		if (!this.downloadDir.endsWith("/")) this.downloadDir += "/";
+	}
+	
+	/**
+	 * Downloaded files are kept in a cache within the download directory. On the next installation the cached file
+	 * is reused when the server confirms that the file didn't change (the file isn't downloaded again).
+	 * When the cache grows larger than the given size, the least recently used files are removed. Defaults to 512 MB
+	 * 
+	 * @param sizeInMb	Maximum size of the cache in megabyte (0 disables the cache)
+	 */
+	public void setDownloadCacheSize(long sizeInMb) {
+		if (sizeInMb < 0) logger.log("w", "The size of the download cache must be greater or equal 0 megabyte", "setDownloadCacheSize");
+		else this.downloadCacheSize = sizeInMb * 1024 * 1024;
+	}
+	/**
+	 * @return	the maximum size of the download cache in bytes
+	 */
+	protected long getDownloadCacheSize() { return downloadCacheSize; }
+	
+	/**
+	 * Sets the expected checksum of the executable. The checksum is calculated while downloading the file.
+	 * When the checksum doesn't match, the installation is aborted before the file is copied into the application directory
+	 * 
+	 * @param algorithm		Algorithm of the checksum: SHA-256 or SHA-512
+	 * @param checksum		The checksum as hex string
+	 */
+	public void setExpectedChecksum(String algorithm, String checksum) {
+		algorithm = normalizeChecksumAlgorithm(algorithm);
+		if (algorithm == null) return;
+		
+		this.checksumAlgorithm = algorithm;
+		this.checksum = checksum.strip().toLowerCase();
+		this.checksumURL = null;
+	}
+	
+	/**
+	 * Sets the URL of a file containing the expected checksum of the executable (like the output of "sha256sum").
+	 * When the download URL contains the operating system and the architecture, the placeholder "#~Variant~#" is replaced with it (windows_x64, linux_arm32).
+	 * The checksum file is downloaded with the same basic auth credentials as the executable
+	 * 
+	 * @param algorithm		Algorithm of the checksum: SHA-256 or SHA-512
+	 * @param url			URL of the checksum file
+	 */
+	public void setChecksumURL(String algorithm, String url) {
+		algorithm = normalizeChecksumAlgorithm(algorithm);
+		if (algorithm == null) return;
+		
+		this.checksumAlgorithm = algorithm;
+		this.checksumURL = url;
+		this.checksum = null;
+	}
+	
+	/**
+	 * Sets the timeouts for all requests of the installation
+	 * 
+	 * @param connectTimeout	Maximum time in seconds to establish a connection to the webserver. Defaults to 15 seconds
+	 * @param readTimeout		Maximum time in seconds to wait for a response or for further data of a response. Defaults to 30 seconds
+	 */
+	public synchronized void setHttpTimeouts(int connectTimeout, int readTimeout) {
+		if (connectTimeout < 1 || readTimeout < 1) { logger.log("w", "The timeouts must be greater or equal 1 second", "setHttpTimeouts"); return; }
+		
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.httpClient = null;
+	}
+	
+	/**
+	 * Sets how often a failed request is repeated. Connection errors, timeouts and temporary errors of the webserver (5xx, 429) are retried.
+	 * An interrupted download is continued with the already downloaded bytes.
+	 * Defaults to 3 attempts with a backoff of 1 - 15 seconds and no overall timeout
+	 * 
+	 * @param maxAttempts		Maximum number of attempts (1 disables the retries)
+	 * @param initialBackoff	Time in milliseconds to wait before the first retry. The time is doubled (with a random part) for every further retry
+	 * @param maxBackoff		Maximum time in milliseconds to wait between two attempts
+	 * @param overallTimeout	Maximum time in seconds for the whole download including all retries (0 = no limit)
+	 */
+	public void setRetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, int overallTimeout) {
+		try {
+			this.retryPolicy = new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, overallTimeout);
+		} catch (IllegalArgumentException ex) {
+			logger.log("w", ex.getMessage(), "setRetryPolicy");
+		}
+	}
+	/**
+	 * @return	the policy for repeating failed requests
+	 */
+	protected RetryPolicy getRetryPolicy() { return retryPolicy; }
+	/**
+	 * @return	the maximum time in seconds to wait for a response or for further data of a response
+	 */
+	protected int getReadTimeout() { return readTimeout; }
+	
+	/**
+	 * Returns the HTTP client that is shared by all requests of the installation. It prefers HTTP/2, so that
+	 * parallel requests to the same server are multiplexed over a single connection. Otherwise the connections are kept alive and reused
+	 * 
+	 * @return	the HTTP client
+	 */
+	protected synchronized HttpClient getHttpClient() {
+		if (httpClient == null) {
+			httpClient = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_2)
+					.followRedirects(HttpClient.Redirect.NORMAL)
+					.connectTimeout(Duration.ofSeconds(connectTimeout))
+					.executor(Executors.newCachedThreadPool(new DaemonThreadFactory("installer-http")))
+					.build();
+		}
+		return httpClient;
+	}
+	
+	/**
+	 * Sets the listener which receives the progress of the download. By default the progress is printed to the console
+	 * 
+	 * @param listener	The listener (null disables the progress output)
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		this.progressListener = listener;
+	}
+	/**
+	 * @return	the listener for the progress of the download or null
+	 */
+	protected ProgressListener getProgressListener() { return progressListener; }
+	
+	/**
+	 * Sets the minimum time between two updates of the download progress. Defaults to 450 milliseconds
+	 * 
+	 * @param millis	Interval in milliseconds
+	 */
+	public void setProgressInterval(long millis) {
+		if (millis < 0) logger.log("w", "The progress interval must be greater or equal 0 milliseconds", "setProgressInterval");
+		else this.progressInterval = millis;
+	}
+	/**
+	 * @return	the minimum time between two updates of the download progress in milliseconds
+	 */
+	protected long getProgressInterval() { return progressInterval; }
+	
+	/**
+	 * Enables the fleet rollout mode for updates that are installed on many hosts at the same time.
+	 * The download is started after a random delay within the start window and the bandwidth of the download is limited,
+	 * so that the webserver isn't overloaded by all hosts at once
+	 * 
+	 * @param startWindow		Maximum random delay in seconds before the download is started (0 disables the delay)
+	 * @param bytesPerSecond	Maximum bandwidth of all downloads in bytes per second (0 disables the limit)
+	 */
+	public synchronized void setFleetRollout(int startWindow, long bytesPerSecond) {
+		if (startWindow < 0 || bytesPerSecond < 0) { logger.log("w", "The start window and the bandwidth must be greater or equal 0", "setFleetRollout"); return; }
+		
+		this.rolloutWindow = startWindow;
+		this.bandwidthLimit = bytesPerSecond;
+		this.bandwidthLimiter = null;
+	}
+	
+	/**
+	 * Returns the token bucket that is shared by all downloads of the installation
+	 * 
+	 * @return	the limiter or null when the bandwidth isn't limited
+	 */
+	protected synchronized BandwidthLimiter getBandwidthLimiter() {
+		if (bandwidthLimiter == null && bandwidthLimit > 0) bandwidthLimiter = new BandwidthLimiter(bandwidthLimit);
+		return bandwidthLimiter;
+	}
+	
+	/**
+	 * When the program is already installed, only the changed entries of the new jar file are downloaded.
+	 * The remaining entries are copied out of the installed jar file. This requires a webserver that supports range requests.
+	 * If the update isn't possible, the whole file is downloaded automatically
+	 * 
+	 * @param deltaUpdate	Whether only the changed entries should be downloaded
+	 */
+	public void setDeltaUpdate(boolean deltaUpdate) {
+		this.deltaUpdate = deltaUpdate;
+	}
+	
+	private String normalizeChecksumAlgorithm(String algorithm) {
+		String normalized = algorithm == null ? "" : algorithm.strip().toUpperCase().replaceFirst("^SHA(\\d)", "SHA-$1");
+		if (!Checksum.isSupported(normalized)) {
+			logger.log("w", "The checksum algorithm \"" + algorithm + "\" is not supported", "setExpectedChecksum");
+			return null;
+		}
+		return normalized;
+	}
+	
+	/**
+	 * Returns the directory in which the executable is downloaded to
+	 * 
+	 * @return the path of the download directory: /home/user/.cache/Company/ShortName/
+	 */
+	protected String getDownloadDir() {
+		
+		if (this.downloadDir != null) return this.downloadDir;
+		
+		if (InstallConfig.getOsType() == OSType.WINDOWS && System.getenv("LOCALAPPDATA") != null) {
+			return System.getenv("LOCALAPPDATA").replace("\\", "/") + "/" + this.getCompany() + "/" + this.getApplicationNameShort() + "/download/";
+		}
+		
+		String cacheHome = System.getenv("XDG_CACHE_HOME");
+		if (cacheHome == null || cacheHome.isBlank()) cacheHome = System.getProperty("user.home") + "/.cache";
+		
+		return cacheHome.replace("\\", "/") + "/" + this.getCompany() + "/" + this.getApplicationNameShort() + "/";
+	}
+	
 	
 	
 	// Creating a desktop entry //
@@ -457,14 +842,7 @@ public class InstallConfig {
 				 		+ "source ${XDG_CONFIG_HOME:-~/.config}/user-dirs.dirs;"
 				 		+ "echo ${XDG_DESKTOP_DIR:-$HOME/Desktop}";
 
-				Process p = new ProcessBuilder("bash", "-c", command).start();
-
-				p.waitFor();
-				BufferedReader buf = new BufferedReader(new InputStreamReader(p.getInputStream()));
-				String line = "";
-				String output = "";
-
-				while ((line = buf.readLine()) != null) { output += line; }
+				String output = new ProcessRunner(logger).bash(5000, command).getFirstLine();
 				
 				if (output.toLowerCase().contains(System.getProperty("user.name").toLowerCase())) {
 					rtc = output + "/";
@@ -618,6 +996,35 @@ public class InstallConfig {
 		return false;
 	}
 	
+	/**
+	 * Returns the directory to which the files of the installed version are written
+	 * 
+	 * @return the path like /usr/share/Company/MyProgram/versions/1.2.0/ (the application directory without side by side versions)
+	 */
+	protected String getVersionDir() {
+		if (!isVersioned()) return getApplicationDir();
+		return getApplicationDir() + "versions/" + getVersionDirName(version) + "/";
+	}
+	
+	/**
+	 * Returns the directory through which the active version is started
+	 * 
+	 * @return the path like /usr/share/Company/MyProgram/current/ (the application directory without side by side versions)
+	 */
+	protected String getActiveDir() {
+		if (!isVersioned()) return getApplicationDir();
+		return getApplicationDir() + "current/";
+	}
+	
+	/**
+	 * @param version	the version of the program
+	 * @return			the name of the directory of the version (characters that are not allowed in a path are replaced)
+	 */
+	protected static String getVersionDirName(String version) {
+		String name = version == null ? "" : version.strip().replaceAll("[^A-Za-z0-9._+-]", "_");
+		return name.isEmpty() || name.equals(".") || name.equals("..") ? "unknown" : name;
+	}
+	
 	/**
 	 * Returns the main directory of the portable installation
 	 * 
@@ -638,14 +1045,10 @@ public class InstallConfig {
 	 */
 	protected boolean getResource(String pathInJar, String pathToWrite, boolean logError) {
 		
-		final File jarFile = new File(getLocationOfJarFile());
+		final File jarFile = this.getResourceJarFile();
 		try {
 			if (jarFile.isFile()) {
-				InputStream in = getClass().getResourceAsStream("/" + pathInJar); 
-				
-				File file = new File(pathToWrite);
-				Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
-				
+				this.extractResource(pathInJar, pathToWrite);
 				return true;
 			} 
 			
@@ -657,6 +1060,61 @@ public class InstallConfig {
 		
 	}
 	
+	/**
+	 * Extracts a file from the jar file. When the file is already installed with the same content, it isn't written again
+	 * 
+	 * @param pathInJar 	Path in the jar file to extract: resource/48x48.png
+	 * @param pathToWrite 	Destination path
+	 * 
+	 * @return 				if the file was written
+	 * @throws IOException	when the resource doesn't exist or the file couldn't be written
+	 */
+	protected boolean extractResource(String pathInJar, String pathToWrite) throws IOException {
+		
+		byte[] content = this.readResource(pathInJar);
+		if (ledger != null) return ledger.writeBytes(new File(pathToWrite), content);
+		
+		Files.write(new File(pathToWrite).toPath(), content);
+		return true;
+	}
+	
+	/**
+	 * Reads a resource of the jar file of the program. When the jar file doesn't contain the resource,
+	 * the resource is read from the class path of the installer
+	 * 
+	 * @param pathInJar 	Path in the jar file: resource/48x48.png
+	 * @return				the content of the resource
+	 * 
+	 * @throws IOException	when the resource doesn't exist
+	 */
+	private byte[] readResource(String pathInJar) throws IOException {
+		
+		File jarFile = this.getResourceJarFile();
+		if (jarFile.isFile()) {
+			try (JarFile jar = new JarFile(jarFile)) {
+				JarEntry entry = jar.getJarEntry(pathInJar.replaceAll("^/+", ""));
+				if (entry != null) {
+					try (InputStream in = jar.getInputStream(entry)) { return in.readAllBytes(); }
+				}
+			} catch (ZipException ex) {
+				logger.log("d", "Unable to read the resources of \"" + jarFile + "\": " + ex.getMessage(), "readResource");
+			}
+		}
+		
+		try (InputStream in = getClass().getResourceAsStream("/" + pathInJar)) {
+			if (in == null) throw new FileNotFoundException("The resource \"" + pathInJar + "\" doesn't exist");
+			return in.readAllBytes();
+		}
+	}
+	
+	/**
+	 * @return	the jar file that contains the resources. During an installation this is the new jar file,
+	 * 			which isn't at its location until all files were created
+	 */
+	private File getResourceJarFile() {
+		return stagedJarFile != null ? stagedJarFile : new File(getLocationOfJarFile());
+	}
+	
 	/**
 	 * Extracts a file from the jar file and copies it to the given path
 	 * 
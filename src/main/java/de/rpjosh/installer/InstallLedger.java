@@ -0,0 +1,259 @@
+package de.rpjosh.installer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers every file the installer wrote together with a hash of the content, the size, the modification time
+ * and the permissions. On a reinstallation a file is only written again when the new content differs
+ * from the recorded one or the file was changed since the last installation.
+ *
+ * The ledger is stored in the application directory, so it's removed together with the program
+ */
+public class InstallLedger {
+
+	private static final String FILE_NAME = ".installLedger";
+	private static final String ALGORITHM = "SHA-256";
+
+	private final Logger logger;
+	private final File file;
+	// the files are written to the transaction instead of the destination (may be null)
+	private final InstallTransaction transaction;
+	// path -> recorded state of the file
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Loads the ledger of the application directory
+	 *
+	 * @param conf			configuration of the installation
+	 * @param transaction	the transaction the changed files are staged in (null = the files are written directly)
+	 */
+	public InstallLedger(InstallConfig conf, InstallTransaction transaction) {
+		this.logger = conf.getLogger();
+		this.file = new File(conf.getApplicationDir() + FILE_NAME);
+		this.transaction = transaction;
+		this.load();
+	}
+
+	/**
+	 * Writes a text file with the default encoding when the content differs from the installed file
+	 *
+	 * @param target		the file to write
+	 * @param content		the content of the file
+	 *
+	 * @return				if the file was written
+	 * @throws IOException	when the file couldn't be written
+	 */
+	protected boolean writeText(File target, String content) throws IOException {
+		return this.writeText(target, content, false);
+	}
+
+	/**
+	 * Writes a text file with the default encoding when the content differs from the installed file
+	 *
+	 * @param target		the file to write
+	 * @param content		the content of the file
+	 * @param executable	if the file should be executable
+	 *
+	 * @return				if the file was written
+	 * @throws IOException	when the file couldn't be written
+	 */
+	protected boolean writeText(File target, String content, boolean executable) throws IOException {
+		return this.writeBytes(target, content.getBytes(Charset.defaultCharset()), executable);
+	}
+
+	/**
+	 * Writes a file when the content differs from the installed file
+	 *
+	 * @param target		the file to write
+	 * @param content		the content of the file
+	 *
+	 * @return				if the file was written
+	 * @throws IOException	when the file couldn't be written
+	 */
+	protected boolean writeBytes(File target, byte[] content) throws IOException {
+		return this.writeBytes(target, content, false);
+	}
+
+	private boolean writeBytes(File target, byte[] content, boolean executable) throws IOException {
+
+		String hash = hash(content);
+		if (this.isUnchanged(target, hash)) return false;
+
+		Path path = transaction != null ? transaction.stage(target).toPath() : target.toPath();
+		Files.write(path, content);
+		if (executable) FileOperations.makeExecutable(path);
+
+		this.record(target, hash);
+		return true;
+	}
+
+	/**
+	 * Checks if the installed file has still the given content
+	 *
+	 * @param target	the installed file
+	 * @param hash		the hash of the new content ({@link #hash(byte[])} or {@link Checksum#of(File, String)} with SHA-256)
+	 *
+	 * @return			if the file doesn't need to be written again
+	 */
+	protected boolean isUnchanged(File target, String hash) {
+		Entry entry = entries.get(getKey(target));
+		if (entry == null || !entry.hash.equals(hash)) return false;
+
+		// the file could have been modified since the last installation
+		Entry current = Entry.of(target, hash);
+		return current != null && current.equals(entry);
+	}
+
+	/**
+	 * Records a file that was written without the ledger. The size, time and permissions are determined when the ledger is saved
+	 *
+	 * @param target	the written file
+	 * @param hash		the hash of the content
+	 */
+	protected void record(File target, String hash) {
+		entries.put(getKey(target), new Entry(hash, -1, -1, ""));
+	}
+
+	/**
+	 * Writes the ledger to the application directory. Files that don't exist anymore are removed from the ledger
+	 */
+	protected synchronized void save() {
+
+		Properties properties = new Properties();
+		for (Map.Entry<String, Entry> recorded: entries.entrySet()) {
+			Entry current = Entry.of(new File(recorded.getKey()), recorded.getValue().hash);
+			if (current == null) { entries.remove(recorded.getKey()); continue; }
+
+			entries.put(recorded.getKey(), current);
+			properties.setProperty(recorded.getKey(), current.toString());
+		}
+
+		try {
+			File temp = new File(file.getPath() + ".tmp");
+			try (OutputStream out = new FileOutputStream(temp)) {
+				properties.store(out, "Files written by the installer. Don't modify this file");
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (Exception ex) {
+			logger.log("w", "Unable to save the install ledger: " + ex.getMessage(), "InstallLedger#save");
+		}
+	}
+
+	/**
+	 * @param content	the content of a file
+	 * @return			the hash of the content as lower case hex string
+	 */
+	protected static String hash(byte[] content) {
+		try {
+			return Checksum.toHex(MessageDigest.getInstance(ALGORITHM).digest(content));
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	/**
+	 * @param target	the file
+	 * @return			the hash of the content of a file in the same format as {@link #hash(byte[])}
+	 *
+	 * @throws IOException	when the file couldn't be read
+	 */
+	protected static String hash(File target) throws IOException {
+		try {
+			return Checksum.of(target, ALGORITHM);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private void load() {
+
+		if (!file.isFile()) return;
+
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+			for (String path: properties.stringPropertyNames()) {
+				Entry entry = Entry.parse(properties.getProperty(path));
+				if (entry != null) entries.put(path, entry);
+			}
+		} catch (Exception ex) {
+			logger.log("d", "Ignoring the install ledger: " + ex.getMessage(), "InstallLedger#load");
+			entries.clear();
+		}
+	}
+
+	private static String getKey(File target) { return target.getAbsolutePath().replace("\\", "/"); }
+
+	/**
+	 * The state of an installed file
+	 */
+	private static class Entry {
+
+		final String hash;
+		final long size;
+		final long lastModified;
+		// POSIX permissions like "rwxr-xr-x" (empty on Windows)
+		final String mode;
+
+		Entry(String hash, long size, long lastModified, String mode) {
+			this.hash = hash;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.mode = mode;
+		}
+
+		/**
+		 * @return	the current state of the file or null when the file doesn't exist
+		 */
+		static Entry of(File target, String hash) {
+			if (!target.isFile()) return null;
+
+			String mode = "";
+			try {
+				Path path = target.toPath();
+				PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+				if (view != null) mode = PosixFilePermissions.toString(view.readAttributes().permissions());
+			} catch (IOException ex) { /* no permissions */ }
+
+			return new Entry(hash, target.length(), target.lastModified(), mode);
+		}
+
+		static Entry parse(String value) {
+			String[] parts = value.split(";", -1);
+			if (parts.length != 4) return null;
+			try {
+				return new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]);
+			} catch (NumberFormatException ex) { return null; }
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Entry)) return false;
+			Entry other = (Entry) obj;
+			return hash.equals(other.hash) && size == other.size && lastModified == other.lastModified && mode.equals(other.mode);
+		}
+
+		@Override
+		public int hashCode() { return hash.hashCode(); }
+
+		@Override
+		public String toString() { return hash + ";" + size + ";" + lastModified + ";" + mode; }
+	}
+
+}
@@ -0,0 +1,204 @@
+package de.rpjosh.installer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects all files of an installation before the installed files are replaced.
+ *
+ * Every file is first written to a staged file next to its destination (".name.staged"), so the old installation
+ * stays untouched while the installation is running. When all steps succeeded, the staged files are moved over the
+ * installed files with atomic renames ({@link #commit()}). When a step failed, the staged files are removed and
+ * the previous version is still installed ({@link #rollback()})
+ */
+public class InstallTransaction {
+
+	private static final String STAGED_ENDING = ".staged";
+	private static final String BACKUP_ENDING = ".previous";
+
+	private final Logger logger;
+	// destination -> staged file (in the order the files were staged)
+	private final Map<File, File> staged = new LinkedHashMap<File, File>();
+	private boolean finished = false;
+
+	/**
+	 * @param logger	the logger of the installation
+	 */
+	public InstallTransaction(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * Returns the file to which the content of the destination has to be written.
+	 * The directory of the destination is created when needed
+	 *
+	 * @param destination	the installed file
+	 * @return				the staged file within the same directory
+	 *
+	 * @throws IOException	when the directory couldn't be created
+	 */
+	protected synchronized File stage(File destination) throws IOException {
+
+		if (finished) throw new IllegalStateException("The transaction is already finished");
+
+		File target = destination.getAbsoluteFile();
+		File file = staged.get(target);
+		if (file == null) {
+			Files.createDirectories(target.getParentFile().toPath());
+			file = sibling(target, STAGED_ENDING);
+			staged.put(target, file);
+		}
+		return file;
+	}
+
+	/**
+	 * Stages a symbolic link. The link replaces the destination with an atomic rename when the transaction is committed
+	 * 
+	 * @param destination	the installed link
+	 * @param target		the target of the link (relative to the directory of the link)
+	 * 
+	 * @throws IOException	when the link couldn't be created
+	 */
+	protected synchronized void stageLink(File destination, Path target) throws IOException {
+		File file = this.stage(destination);
+		Files.deleteIfExists(file.toPath());
+		Files.createSymbolicLink(file.toPath(), target);
+	}
+	
+	/**
+	 * Returns the current location of the content of a file (the staged file or the installed one)
+	 *
+	 * @param destination	the installed file
+	 * @return				the staged file when the file was staged, otherwise the destination itself
+	 */
+	protected synchronized File resolve(File destination) {
+		File file = staged.get(destination.getAbsoluteFile());
+		return file != null && file.exists() ? file : destination;
+	}
+
+	/**
+	 * Moves all staged files into place. When a file couldn't be moved, the already replaced files are restored
+	 * and the remaining staged files are removed
+	 *
+	 * @throws IOException	when the files couldn't be moved into place (the previous installation is restored)
+	 */
+	protected synchronized void commit() throws IOException {
+
+		if (finished) throw new IllegalStateException("The transaction is already finished");
+		finished = true;
+
+		// destination -> backup of the previous file (null when there was no previous file)
+		Map<File, File> committed = new LinkedHashMap<File, File>();
+		try {
+			for (Map.Entry<File, File> file: staged.entrySet()) {
+				File destination = file.getKey();
+				if (!exists(file.getValue())) continue;
+
+				File backup = null;
+				if (exists(destination)) {
+					backup = sibling(destination, BACKUP_ENDING);
+					this.backup(destination, backup);
+				}
+				committed.put(destination, backup);
+
+				move(file.getValue().toPath(), destination.toPath());
+			}
+		} catch (IOException ex) {
+			logger.log("e", "Unable to replace the installed files: " + ex.getMessage() + " -> restoring the previous installation", "InstallTransaction#commit");
+			this.restore(committed);
+			this.deleteStaged();
+			throw ex;
+		}
+
+		// the new installation is complete
+		for (File backup: committed.values()) {
+			if (backup != null) backup.delete();
+		}
+	}
+
+	/**
+	 * Removes all staged files. The installed files are not changed
+	 */
+	protected synchronized void rollback() {
+		if (finished) return;
+		finished = true;
+
+		if (!staged.isEmpty()) logger.log("d", "Discarding " + staged.size() + " staged files", "InstallTransaction#rollback");
+		this.deleteStaged();
+	}
+
+	/**
+	 * @return	the number of staged files
+	 */
+	protected synchronized int size() { return staged.size(); }
+
+	/**
+	 * Keeps the previous file. A hard link is used when possible, so the destination stays in place until it's replaced.
+	 * A symbolic link is kept as link
+	 */
+	private void backup(File destination, File backup) throws IOException {
+		Files.deleteIfExists(backup.toPath());
+		try {
+			Files.createLink(backup.toPath(), destination.toPath());
+		} catch (UnsupportedOperationException | IOException ex) {
+			Files.copy(destination.toPath(), backup.toPath(), StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+		}
+	}
+
+	/**
+	 * Restores the previous files of the already replaced destinations (in the reversed order)
+	 */
+	private void restore(Map<File, File> committed) {
+
+		List<Map.Entry<File, File>> files = new ArrayList<Map.Entry<File, File>>(committed.entrySet());
+		for (int i = files.size() - 1; i >= 0; i--) {
+			File destination = files.get(i).getKey();
+			File backup = files.get(i).getValue();
+			try {
+				if (backup != null) {
+					move(backup.toPath(), destination.toPath());
+					// renaming a hard link over the same file doesn't remove the link
+					Files.deleteIfExists(backup.toPath());
+				} else Files.deleteIfExists(destination.toPath());
+			} catch (IOException ex) {
+				logger.log("e", "Unable to restore \"" + destination + "\": " + ex.getMessage(), "InstallTransaction#restore");
+			}
+		}
+	}
+
+	private void deleteStaged() {
+		for (File file: staged.values()) file.delete();
+	}
+
+	/**
+	 * Replaces the target with an atomic rename (if supported by the file system)
+	 */
+	private static void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * @return	if the file exists (a symbolic link exists even when its target doesn't)
+	 */
+	private static boolean exists(File file) {
+		return Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS);
+	}
+
+	private static File sibling(File file, String ending) {
+		return new File(file.getParentFile(), "." + file.getName() + ending);
+	}
+
+}
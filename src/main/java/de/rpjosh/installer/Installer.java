@@ -1,47 +1,75 @@
 package de.rpjosh.installer;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.UserPrincipal;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.prefs.Preferences;
 import java.util.stream.Collectors;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
 
 import mslinks.ShellLink;
 import de.rpjosh.installer.InstallConfig.OSType;
 
-import static java.lang.System.setErr;
-import static java.util.prefs.Preferences.systemRoot;
-
 public class Installer {
 
+	// maximum number of installation steps that are executed at the same time
+	private static final int INSTALL_THREADS = 4;
+	// time in milliseconds the user has to enter the credentials for the download
+	private static final long AUTH_PROMPT_TIMEOUT = 5 * 60 * 1000;
+	
 	private InstallConfig conf;
 	private Logger logger;
+	private ProcessRunner processes;
+	private HostProfile host;
+	private InstallLedger ledger;
+	private InstallTransaction transaction;
+	// steps that are executed after the new files were moved into place
+	private boolean startUnit = false;
+	private boolean fontsChanged = false;
+	// if a file was changed that is used by the running program (otherwise the running instances are kept)
+	private boolean restartRequired = false;
+	private boolean unitChanged = false;
+	// the directory of the installed version when it was created by this installation (only for side by side versions)
+	private File createdVersionDir = null;
 	
 	public int error = 0;
+	// summary of the download speed that is printed after a successful download
+	private String downloadThroughput = null;
+	// the variant of the program for this machine (determined once)
+	private String variant = null;
 	
 	public Installer(InstallConfig conf) {
 		this.conf = conf;
 		this.logger = conf.getLogger();
+		this.processes = new ProcessRunner(logger);
+		this.host = HostProfile.get();
 	}
 	
 	/**
@@ -63,28 +91,21 @@ public class Installer {
 		
 		// check if the user has root rights
 		if (!conf.getIsPortable() && !conf.getIsUser()) {
-			if (!this.checkRoot()) {
+			if (!host.isRoot()) {
 				System.out.println(Tr.get("root_rights_required"));
 				error = 1;
 				
 				if ( (InstallConfig.getOsType() == OSType.WINDOWS || InstallConfig.getOsType() == OSType.LINUX) && !conf.getQuiet()) {
-					System.out.println(Tr.get("root_askForRestart") + ": ");
-				
 					try {
-						BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
-						long startTime = System.currentTimeMillis();
-											
-						// after a timeout of 15 seconds the program will be closed
-						while ((System.currentTimeMillis() - startTime) < 15 * 1000 && !in.ready()) {
-						}
+						// after a timeout of 15 seconds the program will be closed. The console for the restart is searched while the user answers
+						CompletableFuture<String> restart = PromptService.ask(Tr.get("root_askForRestart") + ": \n", 15 * 1000);
+						RunInConsole.prepare(true);
 						
-						if (in.ready()) {
-							if (in.readLine().toLowerCase().startsWith("y") || in.readLine().toLowerCase().startsWith("j")) {
-								RunInConsole.start(args, true, true, true);
-							}
+						String answer = restart.join();
+						if (answer != null && (answer.toLowerCase().startsWith("y") || answer.toLowerCase().startsWith("j"))) {
+							RunInConsole.start(args, true, true, true);
 						}
 						
-						in.close();
 						error = 2; return;
 						
 					} catch (Exception ex) { logger.log("e", ex, "installProgramm"); 
@@ -102,9 +123,6 @@ public class Installer {
 		
 		System.out.println(Tr.get("installation_start", conf.getApplicationNameShort(), conf.getVersion()) + "\n");
 		
-		// All running instances will be killed
-		if (conf.killRunningInstances) this.killRunningInstances();
-		
 		System.out.print(Tr.get("installation_architekture") + ": ");
 		String aarch = this.getVersionOfProgramm(); if (error != 0) return;	// This could return an error
 		System.out.println(aarch);
@@ -123,14 +141,26 @@ public class Installer {
 			jarFile = this.downloadFile(conf.downloadURL, conf.addVersion, conf.urlEnding, conf.getQuiet() ? false : conf.allowAskForBasicAuth);
 			if (error != 0) return;
 			System.out.println("\r" + Tr.get("installation_download_success") + "   ");
+			if (downloadThroughput != null) System.out.println(downloadThroughput);
 		} else {
 			File fileOffline = new File(conf.downloadURL);
 			
-			if (!fileOffline.exists() || fileOffline.length() < ( 1024 * 1024)) {
+			if (!fileOffline.isFile() || !this.isJarFile(fileOffline)) {
 				System.err.println(Tr.get("installation_download_invalid"));
 				error = 11; return;
 			}
 			jarFile = fileOffline.getAbsolutePath();
+			
+			// a local file can only be verified with a known checksum
+			if (conf.checksum != null) {
+				try {
+					if (!this.verifyChecksum(conf.checksum, Checksum.of(fileOffline, conf.checksumAlgorithm))) return;
+				} catch (Exception ex) {
+					System.err.println(Tr.get("installation_download_invalid"));
+					logger.log("e", ex, "installProgramm");
+					error = 11; return;
+				}
+			}
 		}
 		
 		if (conf.getIsPortable()) {
@@ -147,23 +177,67 @@ public class Installer {
 			conf.setPortable(portableDir.getAbsolutePath().replace("\\", "/") + "/");
 		}
 				
+		// all files are staged first and only moved into place when every step succeeded.
+		// Unchanged files (according to the files of the previous installation) are not written again
+		transaction = new InstallTransaction(logger);
+		ledger = new InstallLedger(conf, transaction);
+		conf.ledger = ledger;
+		if (conf.isVersioned() && !new File(conf.getVersionDir()).exists()) createdVersionDir = new File(conf.getVersionDir());
+		
 		System.out.print("\n" + Tr.get("installation_copyJar") + ": ");
 		try {
 			File source = new File(jarFile);
-			File destination = new File(conf.getApplicationDir() + conf.getApplicationNameShort() + ".jar");
-
-			Files.copy(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			File destination = this.getInstalledJar();
+			File target = this.getDownloadTarget();
+			
+			// a file downloaded next to the installed jar is only renamed. Files of the user and the cache entry are copied,
+			// because a link would share the owner and permissions with the installed file
+			boolean temporary = target.exists() && Files.isSameFile(source.toPath(), target.toPath());
+			String hash = InstallLedger.hash(source);
+			if (ledger.isUnchanged(destination, hash)) {
+				// the installed jar file is up to date
+				if (temporary) Files.delete(source.toPath());
+			} else {
+				this.moveIntoPlace(source, transaction.stage(destination), temporary, false);
+				ledger.record(destination, hash);
+				restartRequired = true;
+			}
 		} catch (Exception ex) {
 			System.out.println(Tr.get("failed") + ".");
 			System.err.println("\n" + Tr.get("errorMessage") + ": ");
 			logger.log("e", ex, "");
 
+			this.rollback();
 			error = 13; return;
 		}
 		System.out.println(Tr.get("successful") + "\n");
 		
 		// set the path for the jar file for the shortcuts
-		conf.setLocationOfJarFile(conf.getApplicationDir() + conf.getApplicationNameShort() + ".jar");
+		conf.setLocationOfJarFile(conf.getActiveDir() + conf.getApplicationNameShort() + ".jar");
+		
+		this.installArtifacts();
+		if (error != 0) { this.rollback(); return; }
+		
+		// the new version is activated together with the other files
+		if (conf.isVersioned()) {
+			try {
+				File link = new File(conf.getActiveDir().replaceAll("/$", ""));
+				Path target = this.getVersionLinkTarget(conf.getVersion());
+				if (!Files.isSymbolicLink(link.toPath()) || !Files.readSymbolicLink(link.toPath()).equals(target)) {
+					transaction.stageLink(link, target);
+					restartRequired = true;
+				}
+			} catch (Exception ex) {
+				System.err.println("\n" + Tr.get("errorMessage") + ": ");
+				logger.log("e", ex, "installProgramm");
+				
+				this.rollback();
+				error = 13; return;
+			}
+		}
+		
+		// the resources are extracted while the new jar file is still staged
+		conf.stagedJarFile = transaction.resolve(this.getInstalledJar());
 		
 		// icon for the control panel for the uninstallation -> set always
 		if (conf.createIconForDeletion) {
@@ -171,86 +245,157 @@ public class Installer {
 			conf.getResource(conf.iconForDeletionPath, conf.getApplicationDir() + "pics/uninstall.ico");
 		}
 		
+		// the remaining steps are executed as a dependency graph -> independent steps run concurrently
+		TaskGraph tasks = new TaskGraph(logger, INSTALL_THREADS);
+		
+		// the icon is shared by all shortcuts -> extract it only once before the shortcuts are created
+		tasks.add("desktopIcon", 0, this::extractDesktopIcon);
+		
 		if (conf.getIsPortable()) {
 			
 			System.out.print(Tr.get("installation_createFiles") + ": ");
-			try {
-				// creates a file "portable" in the application directory //
-				FileWriter fw = new FileWriter(conf.getApplicationDir() + "portable");
-				PrintWriter pw = new PrintWriter(fw);
-				pw.println("This file is needed that the program recognizes, that the application is installed portable");
-				pw.println("Therefore please do not delete this inconspicuous file!");
-				pw.flush();
-				pw.close();
-				
-				if (InstallConfig.getOsType() == OSType.LINUX) {
-					// create a launch script
-					this.createLauncher("", conf.getPortableDir() + conf.getApplicationNameShort(), false);
-					
-					// make the file executable
-					Process p = new ProcessBuilder("bash", "-c", "chmod +x " + conf.getPortableDir() + conf.getApplicationNameShort()).start();
-					p.waitFor(5000, TimeUnit.SECONDS);
-					
-					this.createDesktopShortcut(conf.getPortableDir() + conf.getApplicationNameShort() + ".desktop", "");
-				} else if (InstallConfig.getOsType() == OSType.WINDOWS) {
-					// Create launch script
-					this.createLauncher("", conf.getPortableDir() + conf.getApplicationNameShort() + ".bat", false);
-					
-					this.createDesktopShortcut(conf.getPortableDir() + conf.getApplicationNameShort() + ".lnk", "");
-				}
-
-				System.out.println(Tr.get("successful"));
-
-			} catch (Exception ex) { System.out.println(Tr.get("failed")); error = 14; return; }
+			// creates a file "portable" in the application directory //
+			tasks.add("portableFile", 14, () -> this.writeMarkerFile("portable", "This file is needed that the program recognizes, that the application is installed portable"));
+			
+			if (InstallConfig.getOsType() == OSType.LINUX) {
+				// create a launch script and make it executable
+				tasks.add("launcher", 14, () -> this.createLauncher("", conf.getPortableDir() + conf.getApplicationNameShort(), false));
+				tasks.add("desktopEntry", 14, () -> this.createDesktopShortcut(conf.getPortableDir() + conf.getApplicationNameShort() + ".desktop", ""), "desktopIcon");
+			} else if (InstallConfig.getOsType() == OSType.WINDOWS) {
+				// Create launch script
+				tasks.add("launcher", 14, () -> this.createLauncher("", conf.getPortableDir() + conf.getApplicationNameShort() + ".bat", false));
+				tasks.add("desktopEntry", 14, () -> this.createDesktopShortcut(conf.getPortableDir() + conf.getApplicationNameShort() + ".lnk", ""), "desktopIcon");
+			}
 			
 		} else if (conf.getIsUser()) {
 			// creates a file "userInstallation" in the application directory //
-			try {
-				FileWriter fw = new FileWriter(conf.getApplicationDir() + "userInstallation");
-				PrintWriter pw = new PrintWriter(fw);
-				pw.println("This file is needed that the program recognizes, that the application is installed only for a specific user");
-				pw.println("Therefore please do not delete this inconspicuous file!");
-				pw.flush();
-				pw.close();
-				System.out.println(Tr.get("installation_executeOtherCommands") + "...");
-				this.registerApplication(conf.getIsUser());
-			} catch (Exception ex) { System.out.println(Tr.get("installation_createFilesFailed") + "..."); error = 15; return; }
+			tasks.add("userFile", 15, () -> this.writeMarkerFile("userInstallation", "This file is needed that the program recognizes, that the application is installed only for a specific user"));
+			System.out.println(Tr.get("installation_executeOtherCommands") + "...");
+			this.registerApplication(tasks, conf.getIsUser(), "userFile");
 
 		} else {
 			System.out.println(Tr.get("installation_executeOtherCommands") + "...");
 			
 			// the program will be created
-			this.registerApplication(conf.getIsUser());
+			this.registerApplication(tasks, conf.getIsUser());
+		}
+		
+		// the fonts don't depend on any other step
+		tasks.add("fonts", 0, this::installFonts);
+		
+		error = tasks.run();
+		
+		// replace the installed files only when all files were created. The running instances were not touched until now
+		// (the download and all files were prepared in the meantime) -> they are only stopped for the switch of the files
+		long stopped = 0;
+		if (error == 0) {
+			if (!restartRequired) logger.log("d", "No file of the running program changed -> the running instances are kept", "installProgramm");
+			else if (conf.killRunningInstances || startUnit) stopped = System.nanoTime();
+			
+			if (restartRequired && conf.killRunningInstances) this.killRunningInstances();
+			else if (restartRequired && startUnit) this.stopUnit();
+			
+			try {
+				transaction.commit();
+			} catch (IOException ex) {
+				logger.log("e", ex, "installProgramm");
+				error = 25;
+			}
+		}
+		// the transaction is finished -> resources extracted later are written directly
+		conf.stagedJarFile = null;
+		conf.ledger = null;
+		
+		if (conf.getIsPortable()) System.out.println(Tr.get(error == 0 ? "successful" : "failed"));
+		else if (error == 15) System.out.println(Tr.get("installation_createFilesFailed") + "...");
+		
+		if (error != 0) {
+			this.rollback();
+			// the previous installation was restored -> start the stopped service again
+			if (stopped != 0) this.finishInstallation();
+			System.err.println(Tr.get("installation_rolledBack"));
+			return;
 		}
 		
-		this.installFonts();
+		// the new files are in place
+		if (startUnit) this.startUnit();
 		this.finishInstallation();
+		if (stopped != 0) {
+			double seconds = (System.nanoTime() - stopped) / 1e9;
+			System.out.println(Tr.get("installation_downtime", new DecimalFormat("0.00").format(seconds)));
+		}
 		
-		if (error != 0) return;
+		ledger.save();
+		CompletableFuture<Void> cleanup = CompletableFuture.completedFuture(null);
+		if (conf.isVersioned()) {
+			this.recordActivation(conf.getVersion());
+			cleanup = this.removeOldVersions();
+		}
+		if (fontsChanged) this.registerFonts();
+		cleanup.join();
 		
 		System.out.println("\n" + Tr.get("installation_executionSuccessful") +  "\n");
 	}
+
+	/**
+	 * Creates a file in the application directory that marks the type of the installation
+	 *
+	 * @param name			name of the file
+	 * @param description	why the file is needed
+	 *
+	 * @throws IOException	when the file couldn't be written
+	 */
+	private void writeMarkerFile(String name, String description) throws IOException {
+		String content = description + System.lineSeparator() + "Therefore please do not delete this inconspicuous file!" + System.lineSeparator();
+		ledger.writeText(new File(conf.getApplicationDir() + name), content);
+	}
+
+	/**
+	 * Discards the staged files of the installation. The directory of a new version is removed as well
+	 */
+	private void rollback() {
+		
+		transaction.rollback();
+		conf.stagedJarFile = null;
+		conf.ledger = null;
+		if (createdVersionDir == null) return;
+		
+		try {
+			FileOperations.deleteRecursive(createdVersionDir.toPath());
+		} catch (IOException ex) {
+			logger.log("w", "Unable to remove \"" + createdVersionDir + "\": " + ex.getMessage(), "rollback");
+		}
+	}
 	
 	/**
-	 * Kills all running instances (for a update)
+	 * Returns the file to which the content of the destination has to be written
+	 * 
+	 * @param destination	the installed file
+	 * @return				the staged file during an installation, otherwise the destination itself
+	 * 
+	 * @throws IOException	when the directory of the file couldn't be created
+	 */
+	private File getWritableFile(File destination) throws IOException {
+		return transaction != null ? transaction.stage(destination) : destination;
+	}
+
+	/**
+	 * Kills all running instances (for a update). Called right before the installed files are replaced
 	 */
 	private void killRunningInstances() {
 		
 		try {
 			
 			if (InstallConfig.getOsType() == OSType.WINDOWS) {
-				Process p = new ProcessBuilder("cmd.exe", "/C", "wmic PROCESS Where \"name Like '%java%' AND CommandLine like '%" + conf.getApplicationNameShort() + ".jar%'\" Call Terminate").start();
-				p.waitFor(5, TimeUnit.SECONDS);
+				processes.run(10000, "cmd.exe", "/C", "wmic PROCESS Where \"name Like '%java%' AND CommandLine like '%" + conf.getApplicationNameShort() + ".jar%'\" Call Terminate");
 				
 			} else if (InstallConfig.getOsType() == OSType.LINUX) {
 				// If a service was installed previously try to stop it first. This will fail internal when no service was created
 				if (!conf.getIsPortable()) {
-					Process p = new ProcessBuilder("bash", "-c", "systemctl stop \"" + conf.getApplicationNameShort() + ".service" + "\"").start();
-					p.waitFor(5, TimeUnit.SECONDS);
+					processes.bash(5000, "systemctl stop \"" + conf.getApplicationNameShort() + ".service" + "\"");
 				}
 				
-				Process p = new ProcessBuilder("bash", "-c", "pkill -9 -f '" + conf.getApplicationNameShort() + ".jar'").start();
-				p.waitFor(5, TimeUnit.SECONDS);
+				processes.bash(5000, "pkill -9 -f '" + conf.getApplicationNameShort() + ".jar'");
 			}
 		} catch (Exception ex) { /* not required */ }
 
@@ -258,7 +403,29 @@ public class Installer {
 
 	
 	/**
-	 * Creates a shortcut to the jar file
+	 * Extracts the icon of the shortcuts ({@link #createDesktopShortcut(String, String)}) into the application directory
+	 */
+	private void extractDesktopIcon() {
+		
+		if (!conf.getCreateDesktopEntry()) return;
+		
+		String iconPath = conf.getApplicationDir() + "pics/";
+		if (InstallConfig.getOsType() == OSType.WINDOWS) conf.getResource(conf.getDesktopWindowsICO(), iconPath + "desktop.ico");
+		else if (InstallConfig.getOsType() == OSType.LINUX) conf.getResource(conf.getDesktopLinuxPNG(), iconPath + "desktop.png");
+	}
+	
+	/**
+	 * @param dependencies	the dependencies of a task that creates a shortcut
+	 * @return				the dependencies including the extraction of the icon
+	 */
+	private static String[] withIcon(String... dependencies) {
+		String[] all = Arrays.copyOf(dependencies, dependencies.length + 1);
+		all[dependencies.length] = "desktopIcon";
+		return all;
+	}
+	
+	/**
+	 * Creates a shortcut to the jar file. The icon has to be extracted before ({@link #extractDesktopIcon()})
 	 * 
 	 * @param target	Where to create the shortcut and the filename (z.B. /home/user/Desktop/MyApp.desktop oder C:/User/de03710/Desktop/hi.moin)
 	 * @param args 		Additional parameters how "--minimized"
@@ -272,16 +439,12 @@ public class Installer {
 		try {
 			if ( InstallConfig.getOsType() == OSType.WINDOWS) {
 				
-				conf.getResource(conf.getDesktopWindowsICO(), iconPath + "desktop.ico");
-				
 				ShellLink sl = ShellLink.createLink(conf.getApplicationDir() + conf.getApplicationNameShort() + ".bat").setIconLocation(iconPath.replace("/", "\\") + "desktop.ico");
 				sl.setCMDArgs(args);
-				sl.saveTo(target);
+				sl.saveTo(this.getWritableFile(new File(target)).getPath());
 			
 			} else if (InstallConfig.getOsType() == OSType.LINUX) {
 				
-				conf.getResource(conf.getDesktopLinuxPNG(), iconPath + "desktop.png");
-				
 				String desktopEntry = ""
 						+ "[Desktop Entry]" + "\n"
 						+ "Encoding=UTF-8" + "\n"
@@ -295,12 +458,7 @@ public class Installer {
 						if (conf.desktopCategories != null) 	desktopEntry += "Categories=" + conf.desktopCategories;
 						if (conf.desktopKeywords != null) 		desktopEntry += "Keywords=" + conf.desktopKeywords;
 				
-				FileWriter fwFile = new FileWriter(target);
-				PrintWriter pw = new PrintWriter(fwFile);	
-				
-				pw.print(desktopEntry);
-				pw.flush();
-				pw.close();
+				ledger.writeText(new File(target), desktopEntry);
 			}
 				
 		} catch (Exception ex) {
@@ -309,20 +467,28 @@ public class Installer {
 	}
 	
 	
-	private void registerApplication(Boolean userInstallation) {
+	/**
+	 * Adds the steps that register the application in the operating system (launcher, shortcuts, uninstaller, ...)
+	 * to the task graph. The steps don't depend on each other, so they are executed concurrently
+	 * 
+	 * @param tasks				the task graph of the installation
+	 * @param userInstallation	if the program is only installed for the current user
+	 * @param dependencies		tasks that have to be finished before the application is registered
+	 */
+	private void registerApplication(TaskGraph tasks, boolean userInstallation, String... dependencies) {
 		
 		if (InstallConfig.getOsType() == OSType.WINDOWS) {
 			
 			// Creates a Link that the program can be launched from everywhere //
-			this.createLauncher("", "", true);
+			tasks.add("launcher", 0, () -> this.createLauncher("", "", true), dependencies);
 			
 			// Create also an link for the %PATH% variable
 			if (conf.createPathVariable) {
-				this.createLauncher("", conf.getApplicationDir() + "path/" + conf.getApplicationNameShort() + ".bat", true);
+				tasks.add("pathLauncher", 0, () -> this.createLauncher("", conf.getApplicationDir() + "path/" + conf.getApplicationNameShort() + ".bat", true), dependencies);
 			}
 			
 			// Create a GUI auto start file //
-			if (conf.createGuiAutostart) {
+			if (conf.createGuiAutostart) tasks.add("guiAutostart", 0, () -> {
 				String pathMenu = "C:\\ProgramData\\Microsoft\\Windows\\Start Menu\\Programs\\StartUp\\" + conf.getApplicationNameShort() + ".lnk";
 				
 				// Create an autostart file only for the current user
@@ -331,11 +497,11 @@ public class Installer {
 				}
 				
 				this.createDesktopShortcut(pathMenu, conf.guiAutostartFlags);
-			}
+			}, withIcon(dependencies));
 
 			
 			// in the first step a desktop shortcut will be created //
-			if (conf.getCreateDesktopEntry()) {
+			if (conf.getCreateDesktopEntry()) tasks.add("desktopEntry", 0, () -> {
 				
 				if (userInstallation) {
 					String destination = conf.getDesktopDir();
@@ -365,8 +531,51 @@ public class Installer {
 					this.createDesktopShortcut(locationStartMenu, "");
 				}
 				
+			}, withIcon(dependencies));
+			
+			// registry entries and the uninstall script //
+			tasks.add("uninstaller", 0, () -> this.registerUninstaller(userInstallation), dependencies);
+		}
+		
+		if (InstallConfig.getOsType() == OSType.LINUX) {
+			
+			// create a shortcut because the installer is always run as root //
+			
+			if (!host.isRoot()) { logger.log("i", "Installer has to be run as a root user", "registerApplication" ); return; }
+			
+			// create a shortcut in the start menu //
+			if (conf.getCreateDesktopEntry()) {
+				String pathMenu = "/usr/share/applications/" + conf.getApplicationNameShort() + ".desktop";
+				tasks.add("desktopEntry", 0, () -> this.createDesktopShortcut(pathMenu, ""), withIcon(dependencies));
+			}
+			
+			// create a link that the program can be executed from everywhere //
+			tasks.add("launcher", 0, () -> this.createLauncher("", "", true), dependencies);
+			
+			// create a systemd unit file (the service is started with the launcher) //
+			if (conf.createUnitFile) tasks.add("unitFile", 16, () -> startUnit = this.writeUnitFile(), "launcher");
+			
+			// create a GUI auto start file //
+			if (conf.createGuiAutostart) {
+				// Currently only Gnome is supported
+				String pathMenu = "/home/" + conf.guiAutostartUser + "/.config/autostart/" + conf.getApplicationNameShort() + ".desktop";
+				tasks.add("guiAutostart", 0, () -> this.createDesktopShortcut(pathMenu, conf.guiAutostartFlags), withIcon(dependencies));
 			}
 			
+			// create a uninstaller //
+			tasks.add("uninstaller", 0, this::createUninstallScript, dependencies);
+		}
+	}
+	
+	/**
+	 * [Windows] Writes the uninstall keys into the registry (and the path entry) and creates the uninstall script
+	 * 
+	 * @param userInstallation	if the program is only installed for the current user
+	 */
+	private void registerUninstaller(boolean userInstallation) {
+		
+		if (InstallConfig.getOsType() == OSType.WINDOWS) {
+			
 			// an uninstall keys has to be written to the registry, for uninstallation purposes in the system control //
 			String iconPath = conf.getApplicationDir() + "pics/uninstall.ico";
 			String locationRegistry = "";
@@ -442,8 +651,7 @@ public class Installer {
 				pwFile.flush();
 				pwFile.close();
 
-				Process p = new ProcessBuilder("cmd.exe", "/C", batchMakeRegeditEntry.getAbsolutePath()).start();
-				if (!p.waitFor(10, TimeUnit.SECONDS)) logger.log("w", "Batch File which adds some Registry Keys timed out", "registerApplication");
+				if (processes.run(30000, "cmd.exe", "/C", batchMakeRegeditEntry.getAbsolutePath()).timedOut) logger.log("w", "Batch File which adds some Registry Keys timed out", "registerApplication");
 				
 			} catch (Exception ex) {
 				logger.log("e", ex, "registerApplication (make regedit Entry)");
@@ -492,46 +700,22 @@ public class Installer {
 			try {
 				// creating the batch file
 				File uninstallFile = new File(conf.getApplicationDir() + "uninstall.bat");
-				
-				FileWriter fwFile = new FileWriter(uninstallFile);
-				PrintWriter pwFile = new PrintWriter(fwFile);
-				
-				pwFile.print(batchFileUninstall);
-				pwFile.flush();
-				pwFile.close();
+				ledger.writeText(uninstallFile, batchFileUninstall);
 
 			} catch (Exception ex) {
 				logger.log("e", ex, "registerApplication (make uninstall Skript)");
 			}
 			
 		}
+	}
+	
+	/**
+	 * [Linux] Creates the uninstall script in the application directory
+	 */
+	private void createUninstallScript() {
 		
 		if (InstallConfig.getOsType() == OSType.LINUX) {
 			
-			// create a shortcut because the installer is always run as root //
-			
-			if (!checkRoot()) { logger.log("i", "Installer has to be run as a root user", "registerApplication" ); return; }
-			
-			// create a shortcut in the start menu //
-			if (conf.getCreateDesktopEntry()) {
-				String pathMenu = "/usr/share/applications/" + conf.getApplicationNameShort() + ".desktop";
-				this.createDesktopShortcut(pathMenu, "");
-			}
-			
-			// create a link that the program can be executed from everywhere //
-			this.createLauncher("", "", true);
-			
-			// create a systemd unit file //
-			if (conf.createUnitFile) this.createUnitFile();
-			
-			// create a GUI auto start file //
-			if (conf.createGuiAutostart) {
-				// Currently only Gnome is supported
-				String pathMenu = "/home/" + conf.guiAutostartUser + "/.config/autostart/" + conf.getApplicationNameShort() + ".desktop";
-				this.createDesktopShortcut(pathMenu, conf.guiAutostartFlags);
-			}
-			
-			// create a uninstaller //
 			try {
 				String batchFileUninstall = "#!/bin/bash" + "\n"
 						+ "keepUserSettings=false" + "\n"
@@ -589,16 +773,7 @@ public class Installer {
 				
 				String destination = conf.getApplicationDir() + "uninstall.sh";
 				File uninstaller = new File(destination);
-				
-				FileWriter fwFile = new FileWriter(uninstaller);
-				PrintWriter pwFile = new PrintWriter(fwFile);
-				
-				pwFile.print(batchFileUninstall);
-				pwFile.flush();
-				pwFile.close();
-				
-				Process p = new ProcessBuilder("bash", "-c", "chmod +x " + conf.getApplicationDir() + "uninstall.sh").start();
-				p.waitFor(5000, TimeUnit.SECONDS);
+				ledger.writeText(uninstaller, batchFileUninstall, true);
 				
 			} catch (Exception ex) {
 				logger.log("e", ex, "registerApplication (create Uninstall-Skript");
@@ -676,28 +851,15 @@ public class Installer {
 						+ "else" + "\n"
 						+ "    if [ \"$foreground\" = \"true\" ] || [ \"$foreground\" = \"trueDefault\" ]; then eval \"java"
 							+ (conf.getMaxHeapSize() != 0 ? (" -Xmx" + conf.getMaxHeapSize()) + "M" : "") + (conf.getInitialHeapSize() != 0 ? (" -Xms" + conf.getInitialHeapSize()) + "M" : "")
-							+ " -jar \"\"" + pathToLink + "\"\" \"\"$programOptions\"\"\"" + "\n"
+							+ this.getLaunchTarget(pathToLink, "\"\"") + " \"\"$programOptions\"\"\"" + "\n"
 						+ "    else ( eval \"java" 
 							+ (conf.getMaxHeapSize() != 0 ? (" -Xmx" + conf.getMaxHeapSize()) + "M" : "") + (conf.getInitialHeapSize() != 0 ? (" -Xms" + conf.getInitialHeapSize()) + "M" : "")
-							+ " -jar \"\"" + pathToLink + "\"\" \"\"$programOptions\"\" > /dev/null 2> /dev/null\") &" + "\n"
+							+ this.getLaunchTarget(pathToLink, "\"\"") + " \"\"$programOptions\"\" > /dev/null 2> /dev/null\") &" + "\n"
 						+ "    fi" + "\n"
 						+ "fi" + "\n";
 				
 				File createLink = new File(destination);
-				
-				FileWriter fwFile = new FileWriter(createLink);
-				PrintWriter pwFile = new PrintWriter(fwFile);
-				
-				pwFile.print(batchFileLink);
-				pwFile.flush();
-				pwFile.close();
-				
-				Process p;
-				
-				if (uninstaller) p = new ProcessBuilder("bash", "-c", "chmod 0755 " + destination).start();
-				else p = new ProcessBuilder("bash", "-c", "chmod +x " + destination).start();
-				
-				p.waitFor(5000, TimeUnit.SECONDS);
+				if (ledger.writeText(createLink, batchFileLink, true)) restartRequired = true;
 				
 			} catch (Exception ex) {
 				logger.log("w", "Could not create Link to Programm", "registerApplication (create Link)");
@@ -797,11 +959,11 @@ public class Installer {
 						+ "IF %foreground% == \"true\" (\n"
 						+ "    CALL java" 
 							+ (conf.getMaxHeapSize() != 0 ? (" -Xmx" + conf.getMaxHeapSize()) + "M" : "") + (conf.getInitialHeapSize() != 0 ? (" -Xms" + conf.getInitialHeapSize()) + "M" : "")
-							+ " -jar \"" + pathToLink + "\" %programOption%  \n"
+							+ this.getLaunchTarget(pathToLink, "\"") + " %programOption%  \n"
 						+ ") ELSE (  \n"
 						+ "    CALL START /MIN CMD /C START javaw"
 							+ (conf.getMaxHeapSize() != 0 ? (" -Xmx" + conf.getMaxHeapSize()) + "M" : "") + (conf.getInitialHeapSize() != 0 ? (" -Xms" + conf.getInitialHeapSize()) + "M" : "")
-							+ " -jar \"" + pathToLink + "\" %programOption% > NUL  \n"
+							+ this.getLaunchTarget(pathToLink, "\"") + " %programOption% > NUL  \n"
 						+ ")  \n"
 						+ "\n"
 						+ ":: don't execute printHelp\n"
@@ -822,13 +984,7 @@ public class Installer {
 						+ "EXIT /b -1  \n";
 				
 				File createLink = new File(destination);
-				
-				FileWriter fwFile = new FileWriter(createLink);
-				PrintWriter pwFile = new PrintWriter(fwFile);
-				
-				pwFile.print(batchFileLink);
-				pwFile.flush();
-				pwFile.close();
+				if (ledger.writeText(createLink, batchFileLink)) restartRequired = true;
 				
 			} catch (Exception ex) {
 				logger.log("w", "Could not create Link to Programm", "registerApplication (create Link)");
@@ -837,75 +993,150 @@ public class Installer {
 	}
 	
 	/**
-	 * [Linux] Creates a systemd unit file
+	 * Returns the arguments for java to start the program. Without additional jar files the program is started with "-jar".
+	 * Otherwise the class path is built from the jar file and the artifacts and the main class of the manifest is started
+	 * 
+	 * @param pathToLink	the path to the jar file of the program
+	 * @param quote			the quotes to use within the launch script
+	 * @return				the arguments like ' -jar "/usr/share/Company/App/App.jar"'
 	 */
-	public void createUnitFile() {
+	private String getLaunchTarget(String pathToLink, String quote) {
 		
-		// Nothing to do (maybe create a windows service file when needed)
-		if (InstallConfig.getOsType() != OSType.LINUX) return;
+		List<String> classpath = new ArrayList<String>();
+		classpath.add(pathToLink);
+		for (Artifact artifact: conf.artifacts) {
+			if (artifact.isOnClasspath()) classpath.add(artifact.getTarget(conf.getActiveDir()).getAbsolutePath().replace("\\", "/"));
+		}
+		if (classpath.size() == 1) return " -jar " + quote + pathToLink + quote;
+		
+		// the link to the new version isn't switched yet
+		File jarFile = new File(pathToLink);
+		if (pathToLink.equals(conf.getLocationOfJarFile())) jarFile = this.getInstalledJar();
 		
+		String mainClass = null;
+		// during the installation the new jar file is still staged
+		try (JarFile jar = new JarFile(transaction != null ? transaction.resolve(jarFile) : jarFile)) {
+			if (jar.getManifest() != null) mainClass = jar.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+		} catch (IOException ex) {
+			logger.log("w", "Unable to read the manifest of \"" + pathToLink + "\": " + ex.getMessage(), "getLaunchTarget");
+		}
+		if (mainClass == null) {
+			logger.log("w", "No main class found in the manifest. The artifacts are not added to the class path", "getLaunchTarget");
+			return " -jar " + quote + pathToLink + quote;
+		}
+		
+		String separator = InstallConfig.getOsType() == OSType.WINDOWS ? ";" : ":";
+		return " -cp " + quote + String.join(separator, classpath) + quote + " " + mainClass;
+	}
+	
+	/**
+	 * [Linux] Creates a systemd unit file and starts the service.
+	 * A running service is stopped before its unit file is replaced
+	 */
+	public void createUnitFile() {
+		
+		// the file is staged with an own transaction like during an installation
+		InstallTransaction installTransaction = transaction;
+		InstallLedger installLedger = ledger;
+		InstallTransaction unitTransaction = transaction = new InstallTransaction(logger);
+		InstallLedger unitLedger = ledger = new InstallLedger(conf, unitTransaction);
+		boolean stopped = false;
 		try {
+			if (!this.writeUnitFile()) return;
 			
-			// Check if systemd is present on the machine
-			String testCommand = "if [ -d /run/systemd/system/ ]; then echo yes; else echo no; fi";
-			Process p = new ProcessBuilder("bash", "-c", testCommand).start();
-			p.waitFor();
-			BufferedReader buf = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			String output = buf.readLine();
-			if (!output.equals("yes")) { logger.log("d", "systemd was nout found on the machine -> don't create a service unit", "registerApplication (create Unit File)"); return; }
+			// it will be started with the newest version of the unit file
+			if (unitChanged) { this.stopUnit(); stopped = true; }
+			unitTransaction.commit();
+		} catch (Exception ex) {
+			unitTransaction.rollback();
+			logger.log("w", "Could not create a systemd unit file", "registerApplication (create Unit File)");
 			
-			// Try to stop an unit that is already running (it will be updated with the newest version of the unit file -> don't leave)
-			p = new ProcessBuilder("bash", "-c", "systemctl stop \"" + conf.getApplicationNameShort() + ".service" + "\"").start();
-			p.waitFor(5000, TimeUnit.SECONDS);
-
-			// create the unit file
-			String 									s  = "[Unit]\n";
-													s += "Description=" + (conf.unitDescription == null ? conf.getApplicationNameShort() : conf.unitDescription) + "\n";
-			if (conf.unitAfter != null) 			s += "After=" + conf.unitAfter + "\n";
-			if (conf.unitStartLimitBurst != null)	s += "StartLimitBurst=" + conf.unitStartLimitBurst + "\n";
-			if (conf.unitStartLimitInterval != null)s += "StartLimitIntervalSec=" + conf.unitStartLimitInterval + "\n";
+			// the previous unit file is in place again
+			unitChanged = false;
+			if (stopped) this.startUnit();
+			return;
+		} finally {
+			transaction = installTransaction;
+			ledger = installLedger;
+		}
+		
+		unitLedger.save();
+		this.startUnit();
+	}
+	
+	/**
+	 * [Linux] Stages the systemd unit file. The service is restarted after the files were moved into place
+	 * ({@link #stopUnit()}, {@link #startUnit()})
+	 * 
+	 * @return				if systemd is available (and the unit file was written)
+	 * @throws IOException	when the unit file couldn't be written
+	 */
+	private boolean writeUnitFile() throws IOException {
+		
+		// Nothing to do (maybe create a windows service file when needed)
+		if (InstallConfig.getOsType() != OSType.LINUX) return false;
+		
+		// Check if systemd is present on the machine
+		if (!host.hasSystemd()) { logger.log("d", "systemd was nout found on the machine -> don't create a service unit", "registerApplication (create Unit File)"); return false; }
+		
+		// create the unit file
+		String 									s  = "[Unit]\n";
+												s += "Description=" + (conf.unitDescription == null ? conf.getApplicationNameShort() : conf.unitDescription) + "\n";
+		if (conf.unitAfter != null) 			s += "After=" + conf.unitAfter + "\n";
+		if (conf.unitStartLimitBurst != null)	s += "StartLimitBurst=" + conf.unitStartLimitBurst + "\n";
+		if (conf.unitStartLimitInterval != null)s += "StartLimitIntervalSec=" + conf.unitStartLimitInterval + "\n";
 
-													s += "\n[Install]\n";
-													s += "WantedBy=" + (conf.installWantedBy == null ? "multi-user.target" : conf.installWantedBy) + "\n";
-			if (conf.installAliasName != null)		s += "Alias=" + conf.installAliasName + "\n";
-			
-													s += "\n[Service]\n";
-			if (conf.serviceExecStartPre != null)   s += replacePaths(conf.serviceExecStartPre.stream().collect(Collectors.joining("\nExecStartPre=", "ExecStartPre=", ""))) + "\n";
-			if (conf.serviceExecStartPost != null)  s += replacePaths(conf.serviceExecStartPost.stream().collect(Collectors.joining("\nExecStartPost=", "ExecStartPost=", ""))) + "\n";
-			if (conf.serviceWorkingDir != null)		s += "WorkingDirectory=" + replacePaths(conf.serviceWorkingDir) + "\n";
-			if (conf.serviceUser != null)			s += "User=" + conf.serviceUser + "\n";
-			if (conf.serviceGroup != null)			s += "Group=" + conf.serviceGroup + "\n";
-			if (conf.serviceEnvironment != null)	s += conf.serviceEnvironment.stream().collect(Collectors.joining("\nEnvironment=", "Environment=", "")) + "\n";
-			if (conf.serviceExecStart != null)		s += replacePaths(conf.serviceExecStart.stream().collect(Collectors.joining("\nExecStart=", "ExecStart=", ""))) + "\n";
-			else 									s += "ExecStart=" + replacePaths("#~LaunchScript~# ---background") + "\n";
-			if (conf.serviceExecStop != null)		s += "ExecStop=" + replacePaths(conf.serviceExecStop) + "\n";
-			if (conf.serviceTimeout != null)		s += "TimeoutSec=" + conf.serviceTimeout + "\n";
- 			if (conf.serviceRestart != null)		s += "Restart=" + conf.serviceRestart + "\n";
- 			if (conf.serviceRestartSec != null)		s += "RestartSec=" + conf.serviceRestartSec + "\n";
- 			
- 			// Get all users for systemd configs: getent passwd | grep -v '/usr/sbin/nologin' | grep -v '/bin/false' | awk -F: '($6 != "" && ($3 > 10 || $3 == 0)) {print $6}'.
-			// For Linux only a installation as root is supported -> no user systemd entry
- 			String destination = "/etc/systemd/system/" + conf.getApplicationNameShort() + ".service";
-			File createLink = new File(destination);
-			
-			FileWriter fwFile = new FileWriter(createLink);
-			PrintWriter pwFile = new PrintWriter(fwFile);
-			
-			pwFile.print(s);
-			pwFile.flush();
-			pwFile.close();
-			
+												s += "\n[Install]\n";
+												s += "WantedBy=" + (conf.installWantedBy == null ? "multi-user.target" : conf.installWantedBy) + "\n";
+		if (conf.installAliasName != null)		s += "Alias=" + conf.installAliasName + "\n";
+		
+												s += "\n[Service]\n";
+		if (conf.serviceExecStartPre != null)   s += replacePaths(conf.serviceExecStartPre.stream().collect(Collectors.joining("\nExecStartPre=", "ExecStartPre=", ""))) + "\n";
+		if (conf.serviceExecStartPost != null)  s += replacePaths(conf.serviceExecStartPost.stream().collect(Collectors.joining("\nExecStartPost=", "ExecStartPost=", ""))) + "\n";
+		if (conf.serviceWorkingDir != null)		s += "WorkingDirectory=" + replacePaths(conf.serviceWorkingDir) + "\n";
+		if (conf.serviceUser != null)			s += "User=" + conf.serviceUser + "\n";
+		if (conf.serviceGroup != null)			s += "Group=" + conf.serviceGroup + "\n";
+		if (conf.serviceEnvironment != null)	s += conf.serviceEnvironment.stream().collect(Collectors.joining("\nEnvironment=", "Environment=", "")) + "\n";
+		if (conf.serviceExecStart != null)		s += replacePaths(conf.serviceExecStart.stream().collect(Collectors.joining("\nExecStart=", "ExecStart=", ""))) + "\n";
+		else 									s += "ExecStart=" + replacePaths("#~LaunchScript~# ---background") + "\n";
+		if (conf.serviceExecStop != null)		s += "ExecStop=" + replacePaths(conf.serviceExecStop) + "\n";
+		if (conf.serviceTimeout != null)		s += "TimeoutSec=" + conf.serviceTimeout + "\n";
+ 		if (conf.serviceRestart != null)		s += "Restart=" + conf.serviceRestart + "\n";
+ 		if (conf.serviceRestartSec != null)		s += "RestartSec=" + conf.serviceRestartSec + "\n";
+ 		
+ 		// Get all users for systemd configs: getent passwd | grep -v '/usr/sbin/nologin' | grep -v '/bin/false' | awk -F: '($6 != "" && ($3 > 10 || $3 == 0)) {print $6}'.
+		// For Linux only a installation as root is supported -> no user systemd entry
+ 		String destination = "/etc/systemd/system/" + conf.getApplicationNameShort() + ".service";
+		File createLink = new File(destination);
+		unitChanged = ledger.writeText(createLink, s);
+		if (unitChanged) restartRequired = true;
+		
+		return true;
+	}
+	
+	/**
+	 * [Linux] Stops an unit that is already running
+	 */
+	private void stopUnit() {
+		try {
+			processes.bash(30000, "systemctl stop \"" + conf.getApplicationNameShort() + ".service" + "\"");
+		} catch (Exception ex) { /* Not required */ }
+	}
+	
+	/**
+	 * [Linux] Reloads systemd (only when the unit file changed) and starts (and enables) the service
+	 */
+	private void startUnit() {
+		try {
 			// reload systemd
-			p = new ProcessBuilder("bash", "-c", "systemctl daemon-reload && systemctl start \"" + conf.getApplicationNameShort() + ".service" + "\"").start();
-			p.waitFor(5000, TimeUnit.SECONDS);
+			ProcessRunner.Result result = processes.bash(30000, (unitChanged ? "systemctl daemon-reload && " : "") + "systemctl start \"" + conf.getApplicationNameShort() + ".service" + "\"");
+			if (!result.isSuccess()) logger.log("w", "Could not start the service: " + result.error.trim(), "registerApplication (create Unit File)");
 			
 			if (conf.startAtBoot) {
-				p = new ProcessBuilder("bash", "-c", "systemctl enable \"" + conf.getApplicationNameShort() + ".service"+ "\"").start();
-				p.waitFor(5000, TimeUnit.SECONDS);
+				processes.bash(30000, "systemctl enable \"" + conf.getApplicationNameShort() + ".service"+ "\"");
 			}
-			
-		} catch (Exception ex) {
-			logger.log("w", "Could not create a systemd unit file", "registerApplication (create Unit File)");
+		} catch (IOException ex) {
+			logger.log("w", "Could not start the service: " + ex.getMessage(), "registerApplication (create Unit File)");
 		}
 	}
 	
@@ -921,68 +1152,7 @@ public class Installer {
 	private String replacePaths(String replaceString) {
 		return replacePaths(replaceString, false);
 	}
-	
-	/**
-	 * Checks if the user has administrative privileges in Linux and Windows
-	 * 
-	 * @return	if the user has root privileges
-	 */
-	private boolean checkRoot() {
 		
-		if (InstallConfig.getOsType() == OSType.WINDOWS) {
-			
-			// in the first step it will be check if the user is in the admin group (will print an unavoidable warning ...)
-			// only when setting the key HKEY_LOCAL_MACHINE\SOFTWARE\JavaSoft\Prefs in the registry no warning would be printed
-			boolean isAdminGroup = false;
-		    String groups[] = (new com.sun.security.auth.module.NTSystem()).getGroupIDs();
-		    for (String group : groups) {
-		        if (group.equals("S-1-5-32-544")) isAdminGroup = true;
-		    }
-		    
-		    if (!isAdminGroup) return false;
-		    
-			// to check if the user has started the installer with administrative privileges, a system property will be tried to write
-			// when an error occurs, the user has no administrative privileges / has the installer not started with these rights
-			Preferences preferences = systemRoot();
-			synchronized (System.err) {
-				setErr(new PrintStream(new OutputStream() {
-					@Override
-					public void write(int b) { }
-				}));
-
-				try {
-					preferences.put("foo", "bar");	// Windows
-					preferences.remove("foo");
-					preferences.flush(); 			// Linux
-					return true;
-				} catch (Exception ex) {
-					return false;
-				} finally {
-					setErr(System.err);
-				}
-			}
-			
-		}
-		
-		try {
-			Process p = new ProcessBuilder("bash", "-c", "id -u").start();
-			p.waitFor(5, TimeUnit.SECONDS);
-			
-			BufferedReader buf = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			String a = "";
-			String line = null;
-			if ((line = buf.readLine()) != null) a = line;
-			
-			if (a.equals("0")) return true;
-
-			return false;
-			
-		} catch (Exception ex) {
-			logger.log("w", ex, "checkRoot");
-			return false;
-		}
-	}
-	
 	/**
 	 * Downloads a file from an Webserver (with basic auth support -> set in config)
 	 * 
@@ -997,14 +1167,41 @@ public class Installer {
 
 		String serverURL = conf.downloadURL;
 		
-		if (addVersion) serverURL += "_" + this.getVersionOfProgramm() + end;
+		String variant = this.getVersionOfProgramm();
+		if (addVersion) serverURL += "_" + variant + end;
+		
+		// spread the requests of many hosts that are updated at the same time
+		if (conf.rolloutWindow > 0) {
+			long delay = ThreadLocalRandom.current().nextLong(TimeUnit.SECONDS.toMillis(conf.rolloutWindow));
+			logger.log("d", "Delaying the download by " + delay + " ms (rollout window of " + conf.rolloutWindow + " seconds)", "downloadFile");
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
 		
 		try {
 			URL url = new URL(serverURL);
-	        HttpURLConnection con = (HttpURLConnection) url.openConnection();
+			Downloader downloader = new Downloader(conf, url);
+			
+			List<URL> mirrors = new ArrayList<URL>();
+			for (String mirror: conf.downloadMirrors) mirrors.add(new URL(addVersion ? mirror + "_" + variant + end : mirror));
+			downloader.setMirrors(mirrors);
+			
+			// a cached copy of the file is only revalidated by the server
+			ArtifactCache cache = new ArtifactCache(conf);
+			ArtifactCache.Entry cached = cache.get(serverURL, variant);
+			if (cached != null) downloader.setCacheValidators(cached.eTag, cached.lastModified);
+			
+			// the credentials are sent with the first request when preemptive auth is enabled or the server already accepted them
+			if (conf.preemptiveBasicAuth && conf.authUsername != null && conf.authPassword != null) downloader.setAuthorization(this.getBasicAuthHeader());
+			String authHeaderValue = downloader.getAuthorization();
+			
+			int responseCode = downloader.probe();
 	        
 			// check if basic auth is required
-			if (con.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+			if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED && authHeaderValue == null) {
 				if (conf.authUsername == null || conf.authPassword == null) {
 					if (!askForAuth) { logger.log("e", "Baisc authentication required for downloading the file \"" + serverURL + "\"", ""); error = 40; return null; }
 					
@@ -1013,64 +1210,94 @@ public class Installer {
 					
 					System.out.println("\n" + Tr.get("basicAuthRequired"));
 					
-					if (System.console() == null) { System.err.println(Tr.get("noConsole")); error = 7; return ""; }	
-					if (username == null) {
-						System.out.print(Tr.get("username") + ": ");
-						username = System.console().readLine().strip().toCharArray();
-					}
-					if (password == null) {
-						System.out.print(Tr.get("password") + ": ");
-						password = System.console().readPassword();
+					// the prompts are answered in the background -> no input within the timeout is handled like a missing console.
+					// Both prompts are queued at once, the password is asked directly after the user name
+					CompletableFuture<String> name = username == null ? PromptService.ask(Tr.get("username") + ": ", AUTH_PROMPT_TIMEOUT) : null;
+					CompletableFuture<char[]> secret = password == null ? PromptService.askPassword(Tr.get("password") + ": ", AUTH_PROMPT_TIMEOUT) : null;
+					if (name != null) {
+						String answer = name.join();
+						username = answer == null ? null : answer.toCharArray();
 					}
+					if (secret != null) password = secret.join();
 					System.out.println();
+					if (username == null || password == null) { System.err.println(Tr.get("noConsole")); error = 7; return ""; }
 					conf.authUsername = username;
 					conf.authPassword = password;
 				}
 				
 				// add Basic-Auth
-				String auth = new String(conf.authUsername) + ":" + new String(conf.authPassword);
-		        byte[] authEncBytes = Base64.getEncoder().encode(auth.getBytes());
-		        String authHeaderValue = "Basic " + new String(authEncBytes);
-		        con = (HttpURLConnection) url.openConnection();
-		        con.setRequestProperty("Authorization", authHeaderValue);
-		        con.setRequestProperty("X-Requested-With", "XMLHttpRequest");
+		        authHeaderValue = this.getBasicAuthHeader();
+		        downloader.setAuthorization(authHeaderValue);
+		        responseCode = downloader.probe();
 			}
-			if (con.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED) { 
-				logger.log("e", "Authentication failed for url \"" + serverURL + "\"", "");
-				System.exit(-1);
+			if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED) { 
+				logger.log("e", "Authentication failed for url \"" + serverURL + "\"", "downloadFile");
+				System.out.println(Tr.get("failed"));
+				System.err.println(Tr.get("installation_download_authFailed", serverURL));
+				error = 41;
+				return null;
 			} 
+			if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE) {
+				System.out.println(Tr.get("failed"));
+				System.err.println(Tr.get("installation_download_urlNotFound", serverURL));
+				error = 21;
+				return null;
+			}
+			
+			// the expected checksum has to be known before the download starts
+			String expectedChecksum = null;
+			if (conf.checksumAlgorithm != null) {
+				expectedChecksum = this.getExpectedChecksum(variant, authHeaderValue);
+				if (expectedChecksum == null) return null;
+				downloader.setChecksumAlgorithm(conf.checksumAlgorithm);
+			}
+			
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+				logger.log("d", "Using the cached file \"" + cached.getFile() + "\"", "downloadFile");
+				
+				if (expectedChecksum != null) {
+					// the checksum is stored together with the file, so it has only to be calculated once
+					String actualChecksum = cached.getChecksum(conf.checksumAlgorithm);
+					if (actualChecksum == null) {
+						actualChecksum = Checksum.of(cached.getFile(), conf.checksumAlgorithm);
+						cached.setChecksum(conf.checksumAlgorithm, actualChecksum);
+					}
+					if (!this.verifyChecksum(expectedChecksum, actualChecksum)) { cache.remove(cached); return null; }
+				}
+				
+				cache.touch(cached);
+				return cached.getFile().getAbsolutePath();
+			}
 			
 			try {						
-				File download = File.createTempFile("Download-Installation", ".jar");	
+				// without the cache the file is downloaded directly next to the installed jar
+				File target = cache.isEnabled() ? null : this.getDownloadTarget();
 				
-				// for a download status the size of the downloadable file is determined (in Bytes)
-				double lenght = con.getContentLength();
-				if (lenght < 100 * 1024) { throw new Exception ("Probably not a file (lenght to short)"); }
-				// round to megabytes and two decimal points
-				lenght = Math.round(lenght / 1048576 * 100) / 100.0;
+				// only the changed entries are downloaded when the program is already installed
+				if (conf.deltaUpdate) {
+					File delta = this.downloadDelta(downloader, expectedChecksum, target != null ? target : new File(conf.getDownloadDir() + conf.getApplicationNameShort() + ".delta.jar"));
+					if (delta != null) return this.addToCache(cache, serverURL, variant, delta, downloader, expectedChecksum).getAbsolutePath();
+				}
 				
-				// in parallel the already downloaded file size has to be determined
-				ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-				double lenghtTmp = lenght;
-				Future<?> future = scheduler.scheduleWithFixedDelay(() -> {
-					double actualLenghtOfFile = download.length();
-					actualLenghtOfFile = Math.round(actualLenghtOfFile / 1048576 * 100) / 100.0;
-					
-					double percent = Math.round(actualLenghtOfFile / lenghtTmp * 10000) / 100.0;
-					// add leading zeros
-					DecimalFormat f = new DecimalFormat("0.00");
-					System.out.print("\r" + Tr.get("installation_download") + ": " + f.format(percent) + "% (" + f.format(actualLenghtOfFile) + " MB / " + lenghtTmp + " MB)");
-					;
-				}, 200, 450, TimeUnit.MILLISECONDS);
+				// download the file (split into multiple parts and resumed when supported by the server)
+				downloader.setProgressListener(conf.getProgressListener());
+				File download = target != null ? downloader.download(target) : downloader.download();
+				downloadThroughput = this.getThroughput(downloader.getDownloadedBytes(), downloader.getDownloadNanos());
 				
-				// open the stream and download
-				ReadableByteChannel rbc = Channels.newChannel(con.getInputStream());
-				FileOutputStream fos = new FileOutputStream(download);
-				fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
-				fos.close();
-				future.cancel(true);
+				if (expectedChecksum != null && !this.verifyChecksum(expectedChecksum, downloader.getChecksum())) {
+					download.delete();
+					return null;
+				}
+				// the size of the file says nothing (chunked responses have no size), so the file is validated by its structure
+				if (!this.isJarFile(download)) {
+					download.delete();
+					System.out.println(Tr.get("failed"));
+					System.err.println(Tr.get("installation_download_invalid"));
+					error = 11;
+					return null;
+				}
 				
-				return download.getAbsolutePath();
+				return this.addToCache(cache, serverURL, variant, download, downloader, downloader.getChecksum()).getAbsolutePath();
 				
 			} catch (Exception ex) {
 				System.out.println(Tr.get("failed"));
@@ -1087,6 +1314,349 @@ public class Installer {
 
 	}
 	
+	/**
+	 * Downloads the additional artifacts of the program concurrently into the application directory.
+	 * For an offline installation the files are copied from the file system
+	 */
+	private void installArtifacts() {
+		
+		if (conf.artifacts.isEmpty()) return;
+		
+		System.out.print(Tr.get("installation_artifacts") + ": ");
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(conf.getParallelArtifactDownloads(), conf.artifacts.size()), new DaemonThreadFactory("installer-artifact"));
+		
+		try {
+			Map<Artifact, Future<Boolean>> results = new LinkedHashMap<Artifact, Future<Boolean>>();
+			for (Artifact artifact: conf.artifacts) results.put(artifact, executor.submit(() -> this.installArtifact(artifact)));
+			
+			// all artifacts are waited for, so the failures are reported together
+			int downloaded = 0;
+			List<Artifact> failed = new ArrayList<Artifact>();
+			for (Map.Entry<Artifact, Future<Boolean>> result: results.entrySet()) {
+				try {
+					if (result.getValue().get()) downloaded++;
+				} catch (ExecutionException ex) {
+					failed.add(result.getKey());
+					logger.log("e", ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex, "installArtifacts");
+				}
+			}
+			
+			if (!failed.isEmpty()) {
+				System.out.println(Tr.get("failed") + " (" + failed.size() + " / " + conf.artifacts.size() + ")");
+				System.err.println();
+				for (Artifact artifact: failed) System.err.println(Tr.get("installation_download_failed", artifact.url));
+				error = 24; return;
+			}
+			
+			System.out.println(Tr.get("successful") + " (" + downloaded + " / " + conf.artifacts.size() + ")");
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			System.out.println(Tr.get("failed"));
+			error = 24;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Installs a single artifact. An installed file with a matching checksum is kept
+	 * 
+	 * @param artifact	the artifact to install
+	 * @return			if the file was downloaded (or copied)
+	 * 
+	 * @throws Exception	when the file couldn't be installed or the checksum doesn't match
+	 */
+	private boolean installArtifact(Artifact artifact) throws Exception {
+		
+		File target = artifact.getTarget(conf.getVersionDir());
+		File directory = target.getParentFile();
+		if (!directory.exists() && !directory.mkdirs()) throw new IOException("Unable to create the directory \"" + directory + "\"");
+		
+		if (artifact.checksum != null && target.isFile() && artifact.checksum.equals(Checksum.of(target, artifact.checksumAlgorithm))) {
+			logger.log("d", "The installed file \"" + target + "\" is up to date", "installArtifact");
+			return false;
+		}
+		
+		// a file of the active version is linked into the new version when it didn't change
+		File active = artifact.getTarget(conf.getActiveDir());
+		if (conf.isVersioned() && artifact.checksum != null && active.isFile() && artifact.checksum.equals(Checksum.of(active, artifact.checksumAlgorithm))) {
+			logger.log("d", "Reusing the file \"" + active + "\" of the active version", "installArtifact");
+			this.moveIntoPlace(active.getCanonicalFile(), this.getWritableFile(target), false, true);
+			return false;
+		}
+		
+		File temporary = new File(directory, "." + target.getName() + ".download");
+		String actualChecksum = null;
+		if (conf.getOffline()) {
+			Files.copy(new File(artifact.url).toPath(), temporary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			if (artifact.checksum != null) actualChecksum = Checksum.of(temporary, artifact.checksumAlgorithm);
+		} else {
+			Downloader downloader = new Downloader(conf, new URL(artifact.url));
+			
+			// the configured credentials are used like for the program (without asking: the artifacts are downloaded concurrently)
+			boolean credentials = conf.authUsername != null && conf.authPassword != null;
+			if (conf.preemptiveBasicAuth && credentials) downloader.setAuthorization(this.getBasicAuthHeader());
+			String authorization = downloader.getAuthorization();
+			
+			int responseCode = downloader.probe();
+			if (responseCode == HttpURLConnection.HTTP_UNAUTHORIZED && authorization == null && credentials) {
+				downloader.setAuthorization(this.getBasicAuthHeader());
+				responseCode = downloader.probe();
+			}
+			if (responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_PARTIAL) {
+				throw new IOException("Unexpected response code " + responseCode + " for url \"" + artifact.url + "\"");
+			}
+			
+			if (artifact.checksum != null) downloader.setChecksumAlgorithm(artifact.checksumAlgorithm);
+			temporary = downloader.download(temporary);
+			actualChecksum = downloader.getChecksum();
+		}
+		
+		if (artifact.checksum != null && !artifact.checksum.equals(actualChecksum)) {
+			temporary.delete();
+			throw new IOException(Tr.get("installation_checksum_mismatch", artifact.checksum, actualChecksum) + " (URL: " + artifact.url + ")");
+		}
+		
+		this.moveIntoPlace(temporary, this.getWritableFile(target), true, false);
+		restartRequired = true;
+		return true;
+	}
+	
+	/**
+	 * Checks if the file is a readable jar (zip) file. An error page of the webserver or a
+	 * truncated file is rejected
+	 * 
+	 * @param file	the file to check
+	 * @return		if the file is a valid jar file
+	 */
+	private boolean isJarFile(File file) {
+		try (ZipFile zip = new ZipFile(file)) {
+			return zip.size() > 0;
+		} catch (IOException ex) {
+			logger.log("d", "The file \"" + file + "\" is no valid jar file: " + ex.getMessage(), "isJarFile");
+			return false;
+		}
+	}
+	
+	/**
+	 * Formats the effective speed of a download
+	 * 
+	 * @param bytes		the downloaded bytes
+	 * @param nanos		the duration of the download in nanoseconds
+	 * @return			the translated summary or null when nothing was downloaded
+	 */
+	private String getThroughput(long bytes, long nanos) {
+		if (bytes <= 0 || nanos <= 0) return null;
+		
+		double seconds = nanos / 1e9;
+		DecimalFormat format = new DecimalFormat("0.00");
+		return Tr.get("installation_download_throughput", format.format(bytes / 1048576.0), format.format(seconds), format.format(bytes / 1048576.0 / seconds));
+	}
+	
+	/**
+	 * @return	the value of the authorization header for the configured basic auth credentials
+	 */
+	private String getBasicAuthHeader() {
+		String auth = new String(conf.authUsername) + ":" + new String(conf.authPassword);
+		byte[] authEncBytes = Base64.getEncoder().encode(auth.getBytes());
+		return "Basic " + new String(authEncBytes);
+	}
+	
+	/**
+	 * @return	the location of the installed jar file (within the directory of the installed version)
+	 */
+	private File getInstalledJar() {
+		return new File(conf.getVersionDir() + conf.getApplicationNameShort() + ".jar");
+	}
+	
+	/**
+	 * Returns the temporary file next to the installed jar file to which the new jar file is downloaded.
+	 * Because it's located within the same directory, it can be moved into place with an atomic rename
+	 * 
+	 * @return	the temporary file like "/usr/share/Company/App/.App.jar.download"
+	 */
+	private File getDownloadTarget() {
+		return new File(conf.getApplicationDir() + "." + conf.getApplicationNameShort() + ".jar.download");
+	}
+	
+	/**
+	 * Replaces the destination with the source file. The new file is first placed next to the destination
+	 * and then moved over it with an atomic rename, so the old file stays valid until the switch
+	 * 
+	 * @param source		the new file
+	 * @param destination	the file to replace
+	 * @param temporary		if the source is a temporary file that can be moved (otherwise the source is kept)
+	 * @param allowLink		if a kept source may be hard linked instead of copied (the source is never modified in place).
+	 * 						A file of another owner than the destination directory is always copied
+	 * 
+	 * @throws IOException	when the file couldn't be replaced. The destination is unchanged in this case
+	 */
+	private void moveIntoPlace(File source, File destination, boolean temporary, boolean allowLink) throws IOException {
+		
+		if (source.getAbsoluteFile().equals(destination.getAbsoluteFile())) return;
+		
+		if (temporary) {
+			try {
+				Files.move(source.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				return;
+			} catch (IOException ex) {
+				logger.log("d", "Unable to rename \"" + source + "\" to \"" + destination + "\": " + ex.getMessage(), "moveIntoPlace");
+			}
+		}
+		
+		File tmp = new File(destination.getAbsoluteFile().getParentFile(), "." + destination.getName() + ".tmp");
+		Files.deleteIfExists(tmp.toPath());
+		
+		// a hard link is the cheapest way within the same file system. Otherwise the bytes have to be copied
+		boolean linked = false;
+		if (allowLink && !temporary) {
+			try {
+				UserPrincipal owner = Files.getOwner(destination.getAbsoluteFile().getParentFile().toPath());
+				if (!owner.equals(Files.getOwner(source.toPath()))) throw new IOException("The file is owned by another user");
+				Files.createLink(tmp.toPath(), source.toPath());
+				linked = true;
+			} catch (UnsupportedOperationException | IOException ex) {
+				logger.log("d", "Unable to link \"" + source + "\": " + ex.getMessage(), "moveIntoPlace");
+			}
+		}
+		
+		try {
+			if (!linked) {
+				try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+					 FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+					long size = in.size();
+					for (long position = 0; position < size; ) {
+						long count = in.transferTo(position, size - position, out);
+						if (count <= 0) throw new IOException("Unable to copy \"" + source + "\"");
+						position += count;
+					}
+					out.force(true);
+				}
+			}
+			
+			try {
+				Files.move(tmp.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmp.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+		
+		if (temporary) source.delete();
+	}
+	
+	/**
+	 * Moves the downloaded file into the cache (if enabled)
+	 * 
+	 * @param checksum	the checksum of the file (may be null)
+	 * 
+	 * @return			the path of the file within the cache. When the file couldn't be added, the downloaded file is returned
+	 */
+	private File addToCache(ArtifactCache cache, String serverURL, String variant, File download, Downloader downloader, String checksum) {
+		
+		if (!cache.isEnabled()) return download;
+		
+		try {
+			return cache.put(serverURL, variant, download, downloader.getETag(), downloader.getLastModified(), conf.checksumAlgorithm, checksum).getFile();
+		} catch (Exception ex) {
+			logger.log("w", "Unable to add the downloaded file to the cache: " + ex.getMessage(), "addToCache");
+			return download;
+		}
+	}
+	
+	/**
+	 * Creates the new jar file out of the already installed jar file and the changed entries of the remote jar file.
+	 * Any failure is only logged because the whole file is downloaded afterwards
+	 * 
+	 * @param downloader		the downloader of the remote jar file (probe was already executed)
+	 * @param expectedChecksum	the expected checksum of the new jar file (may be null)
+	 * @param destination		the file to which the new jar file is written
+	 * 
+	 * @return					the new jar file or null when the whole file has to be downloaded
+	 */
+	private File downloadDelta(Downloader downloader, String expectedChecksum, File destination) {
+		
+		// the jar file of the active version is the base of the delta
+		File installed = new File(conf.getActiveDir() + conf.getApplicationNameShort() + ".jar");
+		if (!installed.isFile()) return null;
+		
+		try {
+			long started = System.nanoTime();
+			DeltaUpdate delta = new DeltaUpdate(conf, downloader);
+			if (delta.apply(installed, destination) == null) {
+				destination.delete();
+				return null;
+			}
+			
+			if (expectedChecksum != null) {
+				String actualChecksum = Checksum.of(destination, conf.checksumAlgorithm);
+				if (!expectedChecksum.equalsIgnoreCase(actualChecksum)) throw new IOException("Checksum of the assembled file doesn't match (" + actualChecksum + ")");
+			}
+			
+			String throughput = this.getThroughput(delta.getDownloadedBytes(), System.nanoTime() - started);
+			downloadThroughput = Tr.get("installation_download_delta", new DecimalFormat("0.00").format(delta.getReusedBytes() / 1048576.0))
+					+ (throughput != null ? "\n" + throughput : "");
+			return destination;
+		} catch (Exception ex) {
+			logger.log("w", "Delta update failed, downloading the whole file: " + ex.getMessage(), "downloadDelta");
+			destination.delete();
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the expected checksum of the executable. When a URL to a checksum file is configured,
+	 * the file is downloaded
+	 * 
+	 * @param variant			the variant of the executable like "linux_x64"
+	 * @param authHeaderValue	value of the authorization header (null for no authentication)
+	 * 
+	 * @return					the checksum as lower case hex string (when an error occurred: null + error code 23)
+	 */
+	private String getExpectedChecksum(String variant, String authHeaderValue) {
+		
+		if (conf.checksum != null) return conf.checksum;
+		
+		String checksumURL = conf.checksumURL.replace("#~Variant~#", variant);
+		try {
+			Downloader downloader = new Downloader(conf, new URL(checksumURL));
+			if (authHeaderValue != null) downloader.setAuthorization(authHeaderValue);
+			
+			String fileName = conf.downloadURL.substring(conf.downloadURL.lastIndexOf('/') + 1);
+			if (conf.addVersion) fileName += "_" + variant + conf.urlEnding;
+			
+			String checksum = Checksum.parse(downloader.downloadText(), fileName);
+			if (checksum == null) throw new IOException("No checksum found in the file");
+			return checksum;
+		} catch (Exception ex) {
+			System.out.println(Tr.get("failed"));
+			System.err.println("\n" + Tr.get("installation_checksum_downloadFailed", checksumURL));
+			logger.log("e", ex, "getExpectedChecksum");
+			error = 23;
+			return null;
+		}
+	}
+	
+	/**
+	 * Compares the checksum of the executable with the expected one
+	 * 
+	 * @return	if the checksums are equal (otherwise error code 22 is set)
+	 */
+	private boolean verifyChecksum(String expected, String actual) {
+		
+		if (expected.equalsIgnoreCase(actual)) {
+			logger.log("d", "The checksum of the file matches: " + actual, "verifyChecksum");
+			return true;
+		}
+		
+		System.out.println(Tr.get("failed"));
+		System.err.println("\n" + Tr.get("installation_checksum_mismatch", expected, actual));
+		logger.log("e", "Checksum mismatch (expected: " + expected + ", actual: " + actual + ")", "verifyChecksum");
+		error = 22;
+		return false;
+	}
+	
 	/**
 	 * Return the version of the program to download
 	 * 
@@ -1094,6 +1664,7 @@ public class Installer {
 	 */
 	protected String getVersionOfProgramm() {
 		
+		if (variant != null) return variant;
 		String rtc  = "";
 		
 		// operating system //
@@ -1122,72 +1693,235 @@ public class Installer {
 			return "";
 		}
 		
+		variant = rtc;
 		return rtc;
 	}
 	
+	/**
+	 * Extracts the fonts into the font directory of the system (or of the user). The fonts are registered
+	 * after the files were moved into place ({@link #registerFonts()})
+	 */
 	private void installFonts() {
 		
 		if (conf.getFontsToInstall().isEmpty()) return;
 		
+		if (InstallConfig.getOsType() == OSType.WINDOWS && !host.isRoot()) {
+			logger.log("w", "Can't install fonts without admin privilegies in Windows -> skipping. You should mind a reinstall with Admin-Privelegis", "installFonts");
+			return;
+		}
+		
+		String path = this.getFontDirectory();
+		for (Map.Entry<String, String> entry: conf.getFontsToInstall().entrySet()) {
+			try {
+				if (conf.extractResource(entry.getValue(), path + entry.getKey() + ".ttf")) fontsChanged = true;
+			} catch (IOException ex) { logger.log("w", "Unable to install the font \"" + entry.getKey() + "\": " + ex.getMessage(), "installFonts"); }
+		}
+	}
+	
+	/**
+	 * Registers the installed fonts in the registry (Windows) or rebuilds the font cache (Linux)
+	 */
+	private void registerFonts() {
+		
+		String path = this.getFontDirectory();
+		
 		if (InstallConfig.getOsType() == OSType.WINDOWS) {
 			
-			if (this.checkRoot()) {
+			String batchFile = "";
+			for (Map.Entry<String, String> entry: conf.getFontsToInstall().entrySet()) {
+				batchFile += "reg add \"HKLM\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\Fonts\" /v \"" + entry.getKey() + " (TrueType)\" /t REG_SZ /d \"" + path + entry.getKey() + ".ttf\" /f \n";
+			}
+			
+			try {
+				// create the batch file and make it executable
+				File batchMakeRegeditEntry = File.createTempFile("installApplication", ".bat");
 				
-				String path = System.getenv("WINDIR") + "\\Fonts\\";
-				String batchFile = "";
-				for (Map.Entry<String, String> entry: conf.getFontsToInstall().entrySet()) {
-					conf.getResource(entry.getValue(), path + entry.getKey() + ".ttf", false);
-					batchFile += "reg add \"HKLM\\SOFTWARE\\Microsoft\\Windows NT\\CurrentVersion\\Fonts\" /v \"" + entry.getKey() + " (TrueType)\" /t REG_SZ /d \"" + path + entry.getKey() + ".ttf\" /f \n";
-				}
-				try {
-					// create the batch file and make it executable
-					File batchMakeRegeditEntry = File.createTempFile("installApplication", ".bat");
-					
-					FileWriter fwFile = new FileWriter(batchMakeRegeditEntry);
-					PrintWriter pwFile = new PrintWriter(fwFile);
-					
-					pwFile.print(batchFile);
-					pwFile.flush();
-					pwFile.close();
-
-					Process p = new ProcessBuilder("cmd.exe", "/C", batchMakeRegeditEntry.getAbsolutePath()).start();
-					if (!p.waitFor(10, TimeUnit.SECONDS)) logger.log("w", "Batch File which adds Registry Keys for uninstallation not fully executed (timeout)", "registerApplication");
-				} catch (Exception ex) { logger.log("e", ex, "installFonts"); }
+				FileWriter fwFile = new FileWriter(batchMakeRegeditEntry);
+				PrintWriter pwFile = new PrintWriter(fwFile);
 				
-			} else {
-				logger.log("w", "Can't install fonts without admin privilegies in Windows -> skipping. You should mind a reinstall with Admin-Privelegis", "installFonts");
-			}
+				pwFile.print(batchFile);
+				pwFile.flush();
+				pwFile.close();
+
+				if (processes.run(30000, "cmd.exe", "/C", batchMakeRegeditEntry.getAbsolutePath()).timedOut) logger.log("w", "Batch File which adds Registry Keys for uninstallation not fully executed (timeout)", "registerApplication");
+			} catch (Exception ex) { logger.log("e", ex, "installFonts"); }
 			
 		} else if (InstallConfig.getOsType() == OSType.LINUX) {
 			
-			String path = "";
-			if (this.checkRoot()) path = "/usr/share/fonts/truetype/";	
-			else path = System.getProperty("user.home") + "/.local/share/fonts/";
-			
-			// create directories when not present
-			new File(path).mkdirs();
-			
-			final String path_ = path;
-			conf.getFontsToInstall().forEach( (name, pathInJar) -> {
-				conf.getResource(pathInJar, path_ + name + ".ttf");
-			});
-			
 			try {
 				// Set permissions -> Folders: 0755 | Files: 0644
-				Process p;
+				FileOperations.setPermissionsRecursive(Paths.get(path), "rw-r--r--", "rwxr-xr-x");
 				
-				p = new ProcessBuilder("bash", "-c", "chmod -R 0644" + path + "*").start();
-				p.waitFor(5, TimeUnit.SECONDS);
+				// the verbose output is read by the process runner, so the command can't block on a full pipe
+				processes.bash(60000, "fc-cache -f -v");
+				
+			} catch (Exception ex) { logger.log("w", "Unable to update the installed fonts: " + ex.getMessage(), "installFonts"); }
+		}
+	}
+	
+	/**
+	 * @return	the directory to install the fonts to
+	 */
+	private String getFontDirectory() {
+		if (InstallConfig.getOsType() == OSType.WINDOWS) return System.getenv("WINDIR") + "\\Fonts\\";
+		
+		return host.isRoot() ? "/usr/share/fonts/truetype/" : System.getProperty("user.home") + "/.local/share/fonts/";
+	}
+	
+	/**
+	 * [Linux] Activates another installed version of the program (like the previous version after a failed update) by switching
+	 * the link "current" with an atomic rename. A running service is restarted with the activated version.
+	 * The launchers of the last installation are kept. Only available when the versions are installed side by side ({@link InstallConfig#setKeepVersions(int)})
+	 * 
+	 * @param version	the version to activate ({@link #getInstalledVersions()})
+	 * @return			if the version was activated
+	 */
+	public boolean activateVersion(String version) {
+		
+		if (!conf.isVersioned()) { logger.log("w", "The versions are not installed side by side", "activateVersion"); return false; }
+		
+		File directory = new File(conf.getApplicationDir() + "versions/" + InstallConfig.getVersionDirName(version));
+		if (!directory.isDirectory()) { logger.log("w", "The version \"" + version + "\" is not installed", "activateVersion"); return false; }
+		
+		InstallTransaction switchover = new InstallTransaction(logger);
+		try {
+			switchover.stageLink(new File(conf.getApplicationDir() + "current"), this.getVersionLinkTarget(version));
+			switchover.commit();
+		} catch (IOException ex) {
+			switchover.rollback();
+			logger.log("e", ex, "activateVersion");
+			return false;
+		}
+		this.recordActivation(version);
+		
+		try {
+			// only a running service is restarted
+			processes.bash(30000, "systemctl try-restart \"" + conf.getApplicationNameShort() + ".service" + "\"");
+		} catch (Exception ex) { /* Not required */ }
+		
+		return true;
+	}
+	
+	/**
+	 * [Linux] Returns the versions that are installed side by side ({@link InstallConfig#setKeepVersions(int)})
+	 * 
+	 * @return	the versions ordered by the time of their activation (the newest first). Versions that were never activated are at the end
+	 */
+	public List<String> getInstalledVersions() {
+		
+		File[] directories = new File(conf.getApplicationDir() + "versions/").listFiles(File::isDirectory);
+		if (directories == null) return new ArrayList<String>();
+		
+		List<String> installed = Arrays.stream(directories).map(File::getName).sorted().collect(Collectors.toList());
+		List<String> versions = this.getActivatedVersions();
+		versions.retainAll(installed);
+		installed.removeAll(versions);
+		versions.addAll(installed);
+		
+		return versions;
+	}
+	
+	/**
+	 * @param version	the version of the program
+	 * @return			the target of the link "current" relative to the application directory
+	 */
+	private Path getVersionLinkTarget(String version) {
+		return Paths.get("versions", InstallConfig.getVersionDirName(version));
+	}
+	
+	/**
+	 * [Linux] Remembers the activation of a version. The modification time of the directories isn't used,
+	 * because it's changed by copying or restoring the directories
+	 * 
+	 * @param version	the activated version
+	 */
+	private void recordActivation(String version) {
+		
+		List<String> versions = this.getActivatedVersions();
+		String name = InstallConfig.getVersionDirName(version);
+		versions.remove(name);
+		versions.add(0, name);
+		
+		this.writeActivatedVersions(versions);
+	}
+	
+	/**
+	 * @return	the names of the version directories in the order of their activation (the newest first)
+	 */
+	private List<String> getActivatedVersions() {
+		
+		List<String> versions = new ArrayList<String>();
+		File file = this.getActivationFile();
+		if (!file.isFile()) return versions;
+		
+		try {
+			for (String line: Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				if (!line.isBlank() && !versions.contains(line.strip())) versions.add(line.strip());
+			}
+		} catch (IOException ex) {
+			logger.log("w", "Unable to read the activated versions: " + ex.getMessage(), "getActivatedVersions");
+		}
+		return versions;
+	}
+	
+	private void writeActivatedVersions(List<String> versions) {
+		
+		File file = this.getActivationFile();
+		File temp = new File(file.getPath() + ".tmp");
+		try {
+			Files.write(temp.toPath(), versions, StandardCharsets.UTF_8);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			logger.log("w", "Unable to record the activated versions: " + ex.getMessage(), "writeActivatedVersions");
+		}
+	}
+	
+	/**
+	 * @return	the file with the activated versions like "/usr/share/Company/App/versions/.activated"
+	 */
+	private File getActivationFile() {
+		return new File(conf.getApplicationDir() + "versions/.activated");
+	}
+	
+	/**
+	 * [Linux] Removes the versions that exceed the number of kept versions (the versions that were activated least recently),
+	 * directories of versions that were never activated and the files of an installation without side by side versions.
+	 * The files are removed in the background
+	 * 
+	 * @return	the running removal
+	 */
+	private CompletableFuture<Void> removeOldVersions() {
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("installer-cleanup"));
+		try {
+			return CompletableFuture.runAsync(() -> {
+				List<File> obsolete = new ArrayList<File>();
+				obsolete.add(new File(conf.getApplicationDir() + conf.getApplicationNameShort() + ".jar"));
+				for (Artifact artifact: conf.artifacts) obsolete.add(artifact.getTarget(conf.getApplicationDir()));
 				
-				p = new ProcessBuilder("bash", "-c", "find " + path + " -type d -exec chmod 0755 {} +").start();
-				p.waitFor(5, TimeUnit.SECONDS);
+				// the active version is always the first one
+				List<String> versions = this.getInstalledVersions();
+				List<String> kept = new ArrayList<String>(this.getActivatedVersions());
+				kept.retainAll(versions);
+				kept = new ArrayList<String>(kept.subList(0, Math.min(conf.getKeptVersions(), kept.size())));
 				
-				p = new ProcessBuilder("bash", "-c", "fc-cache -f -v").start();
-				p.waitFor(5, TimeUnit.SECONDS);
+				for (String version: versions) {
+					if (!kept.contains(version)) obsolete.add(new File(conf.getApplicationDir() + "versions/" + version));
+				}
+				this.writeActivatedVersions(kept);
 				
-			} catch (Exception ex) { }
+				for (File file: obsolete) {
+					try {
+						FileOperations.deleteRecursive(file.toPath());
+					} catch (IOException ex) {
+						logger.log("w", "Unable to remove \"" + file + "\": " + ex.getMessage(), "removeOldVersions");
+					}
+				}
+			}, executor);
+		} finally {
+			executor.shutdown();
 		}
-	}	
+	}
 	
 	/**
 	 * This function will finish the installation by executing commands
@@ -1197,8 +1931,7 @@ public class Installer {
 		if (InstallConfig.getOsType() == OSType.LINUX && !conf.getIsPortable()) {
 			try {
 				// Try to start a previously installed service again that was stopped during installation
-				Process p = new ProcessBuilder("bash", "-c", "systemctl start \"" + conf.getApplicationNameShort() + ".service" + "\"").start();
-				p.waitFor(5, TimeUnit.SECONDS);
+				processes.bash(30000, "systemctl start \"" + conf.getApplicationNameShort() + ".service" + "\"");
 			} catch (Exception ex) { /* Not required */ }
 		}
 	}
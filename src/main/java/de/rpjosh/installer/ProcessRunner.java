@@ -0,0 +1,169 @@
+package de.rpjosh.installer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts external commands. The output of the commands is read concurrently into bounded buffers, so a command that
+ * writes much output can't block on a full pipe.
+ *
+ * When a command doesn't finish within its timeout, the command and all of its child processes are killed
+ */
+public class ProcessRunner {
+
+	// maximum number of bytes that are kept from the output (stdout and stderr each). The rest is read and discarded
+	private static final int MAX_OUTPUT = 64 * 1024;
+	// time in milliseconds to wait for the end of the output after the command finished (a background child may keep the pipe open)
+	private static final long OUTPUT_GRACE = 1000;
+
+	// threads that read the output of the commands
+	private static final ExecutorService readers = Executors.newCachedThreadPool(new DaemonThreadFactory("installer-process"));
+
+	private final Logger logger;
+
+	/**
+	 * @param logger	the logger for the duration of the commands (null = nothing is logged)
+	 */
+	public ProcessRunner(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * Starts a command without waiting for it
+	 *
+	 * @param timeout		maximum time in milliseconds the command may run
+	 * @param command		the command and its arguments
+	 *
+	 * @return				the result, that is completed when the command finished or was killed
+	 *
+	 * @throws IOException	when the command couldn't be started
+	 */
+	protected CompletableFuture<Result> start(long timeout, String... command) throws IOException {
+
+		long started = System.nanoTime();
+		Process process = new ProcessBuilder(command).start();
+		// the commands don't get any input
+		process.getOutputStream().close();
+
+		OutputBuffer output = new OutputBuffer();
+		OutputBuffer error = new OutputBuffer();
+		CompletableFuture<Void> readOutput = CompletableFuture.runAsync(() -> output.read(process.getInputStream()), readers);
+		CompletableFuture<Void> readError = CompletableFuture.runAsync(() -> error.read(process.getErrorStream()), readers);
+
+		return process.onExit().thenApply(p -> true).completeOnTimeout(false, timeout, TimeUnit.MILLISECONDS).thenCompose(finished -> {
+			if (!finished) kill(process);
+
+			return CompletableFuture.allOf(readOutput, readError).completeOnTimeout(null, OUTPUT_GRACE, TimeUnit.MILLISECONDS).thenApply(v -> {
+				Result result = new Result(finished ? process.exitValue() : -1, !finished, output.toString(), error.toString(), (System.nanoTime() - started) / 1000000);
+
+				if (logger != null) {
+					if (finished) logger.log("d", "\"" + String.join(" ", command) + "\" finished with exit code " + result.exitCode + " after " + result.duration + " ms", "ProcessRunner");
+					else logger.log("w", "\"" + String.join(" ", command) + "\" was killed after " + result.duration + " ms (timeout)", "ProcessRunner");
+				}
+				return result;
+			});
+		});
+	}
+
+	/**
+	 * Executes a command and waits until it's finished
+	 *
+	 * @param timeout		maximum time in milliseconds the command may run
+	 * @param command		the command and its arguments
+	 *
+	 * @return				the result of the command
+	 *
+	 * @throws IOException	when the command couldn't be started
+	 */
+	protected Result run(long timeout, String... command) throws IOException {
+		return start(timeout, command).join();
+	}
+
+	/**
+	 * Executes a bash script and waits until it's finished
+	 *
+	 * @param timeout		maximum time in milliseconds the script may run
+	 * @param script		the script
+	 *
+	 * @return				the result of the script
+	 *
+	 * @throws IOException	when bash couldn't be started
+	 */
+	protected Result bash(long timeout, String script) throws IOException {
+		return run(timeout, "bash", "-c", script);
+	}
+
+	/**
+	 * Kills the process and all of its children. The children are killed first because they
+	 * are no longer descendants of the process when it was killed
+	 */
+	private static void kill(Process process) {
+		process.descendants().forEach(ProcessHandle::destroyForcibly);
+		process.destroyForcibly();
+	}
+
+	/**
+	 * The result of a command
+	 */
+	protected static class Result {
+
+		// the exit code of the command (-1 when the command was killed)
+		protected final int exitCode;
+		protected final boolean timedOut;
+		// the first bytes of stdout and stderr
+		protected final String output;
+		protected final String error;
+		// the duration in milliseconds
+		protected final long duration;
+
+		private Result(int exitCode, boolean timedOut, String output, String error, long duration) {
+			this.exitCode = exitCode;
+			this.timedOut = timedOut;
+			this.output = output;
+			this.error = error;
+			this.duration = duration;
+		}
+
+		/**
+		 * @return	if the command finished with the exit code 0
+		 */
+		protected boolean isSuccess() { return !timedOut && exitCode == 0; }
+
+		/**
+		 * @return	the first line of the output (empty if there is no output)
+		 */
+		protected String getFirstLine() { return output.split("\\R", 2)[0].trim(); }
+	}
+
+	/**
+	 * Reads a stream until its end and keeps only the first {@value #MAX_OUTPUT} bytes
+	 */
+	private static class OutputBuffer {
+
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		void read(InputStream in) {
+			byte[] chunk = new byte[8192];
+			try (in) {
+				int read;
+				while ((read = in.read(chunk)) != -1) {
+					synchronized (this) {
+						buffer.write(chunk, 0, Math.max(0, Math.min(read, MAX_OUTPUT - buffer.size())));
+					}
+				}
+			} catch (IOException ex) { /* the process was killed */ }
+		}
+
+		@Override
+		public synchronized String toString() {
+			return new String(buffer.toByteArray(), Charset.defaultCharset());
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package de.rpjosh.installer;
+
+/**
+ * Receives the progress of a download. The listener is called from the threads that write
+ * the downloaded bytes, so an implementation should return quickly.
+ * The calls are throttled to the interval configured with {@link InstallConfig#setProgressInterval(long)}
+ */
+public interface ProgressListener {
+
+	/**
+	 * Called before the first byte is downloaded
+	 *
+	 * @param name				name of the downloaded file
+	 * @param totalBytes		size of the file in bytes or -1 when the size is unknown
+	 * @param resumedBytes		bytes that were already downloaded by a previous (interrupted) download
+	 */
+	default void onStart(String name, long totalBytes, long resumedBytes) { }
+
+	/**
+	 * Called periodically while the file is downloaded
+	 *
+	 * @param transferredBytes	bytes that were downloaded (including the resumed bytes)
+	 * @param totalBytes		size of the file in bytes or -1 when the size is unknown
+	 */
+	void onProgress(long transferredBytes, long totalBytes);
+
+	/**
+	 * Called after the download finished successfully
+	 *
+	 * @param transferredBytes	size of the downloaded file
+	 */
+	default void onComplete(long transferredBytes) { }
+
+}
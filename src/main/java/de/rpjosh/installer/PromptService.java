@@ -0,0 +1,114 @@
+package de.rpjosh.installer;
+
+import java.io.BufferedReader;
+import java.io.Console;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks the user for input on the console. The input is read with a blocking read in a separate thread,
+ * so the caller can wait for the answer with a timeout (or continue with other work in the meantime).
+ *
+ * Because the standard input can only be read by one thread, the prompts are queued and asked one after another.
+ * A prompt that timed out while its read was already waiting for input can't be cancelled: the next question is only
+ * printed after that line was entered and the line is discarded. So a line is never passed to another prompt
+ * and a password is never read with a visible read of a previous prompt.
+ *
+ * The reads are executed by a virtual thread when the runtime supports them (Java 21), otherwise by a daemon thread
+ */
+public class PromptService {
+
+	private static final ExecutorService reader = Executors.newSingleThreadExecutor(getThreadFactory());
+	// used when the program wasn't started from a console (like in an IDE)
+	private static BufferedReader in;
+
+	private PromptService() { }
+
+	/**
+	 * Prints the question and reads the answer in the background
+	 *
+	 * @param question	the question that is printed (without a new line)
+	 * @param timeout	maximum time in milliseconds to wait for the answer
+	 *
+	 * @return			the answer without leading and trailing white spaces. The result is null when the timeout elapsed
+	 * 					or no more input is available
+	 */
+	public static CompletableFuture<String> ask(String question, long timeout) {
+		return read(question, false, timeout).thenApply(line -> line == null ? null : new String(line).strip());
+	}
+
+	/**
+	 * Prints the question and reads a password in the background. The input is hidden when a console is available
+	 *
+	 * @param question	the question that is printed (without a new line)
+	 * @param timeout	maximum time in milliseconds to wait for the answer
+	 *
+	 * @return			the password. The result is null when the timeout elapsed or no more input is available
+	 */
+	public static CompletableFuture<char[]> askPassword(String question, long timeout) {
+		return read(question, true, timeout);
+	}
+
+	/**
+	 * Waits for the answer of a question
+	 *
+	 * @param question	the question that is printed (without a new line)
+	 * @param timeout	maximum time in milliseconds to wait for the answer
+	 *
+	 * @return			the answer or null when the timeout elapsed or no more input is available
+	 */
+	public static String readLine(String question, long timeout) {
+		return ask(question, timeout).join();
+	}
+
+	/**
+	 * Queues a new read. The question is printed when all previous reads finished.
+	 * A read whose timeout elapsed before it was started is skipped
+	 *
+	 * @param question	the question that is printed (without a new line)
+	 * @param hidden	if the input should not be shown
+	 * @param timeout	maximum time in milliseconds to wait for the answer
+	 */
+	private static CompletableFuture<char[]> read(String question, boolean hidden, long timeout) {
+
+		CompletableFuture<char[]> read = CompletableFuture.supplyAsync(() -> {
+			System.out.print(question);
+			System.out.flush();
+
+			Console console = System.console();
+			if (console != null) return hidden ? console.readPassword() : toChars(console.readLine());
+
+			try {
+				if (in == null) in = new BufferedReader(new InputStreamReader(System.in));
+				return toChars(in.readLine());
+			} catch (IOException ex) { throw new UncheckedIOException(ex); }
+		}, reader);
+
+		// the timeout completes the future itself -> the answer of a read that is still running is dropped
+		return read.completeOnTimeout(null, timeout, TimeUnit.MILLISECONDS).exceptionally(ex -> null);
+	}
+
+	/**
+	 * @return	a factory for virtual threads when they are available. The installer is compiled for Java 11,
+	 * 			so the builder is looked up by reflection
+	 */
+	private static ThreadFactory getThreadFactory() {
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			Object virtual = builder.getMethod("name", String.class).invoke(Thread.class.getMethod("ofVirtual").invoke(null), "installer-prompt");
+			return (ThreadFactory) builder.getMethod("factory").invoke(virtual);
+		} catch (ReflectiveOperationException | RuntimeException ex) {
+			// older runtime (or a preview of virtual threads that isn't enabled)
+			return new DaemonThreadFactory("installer-prompt");
+		}
+	}
+
+	private static char[] toChars(String line) { return line == null ? null : line.toCharArray(); }
+
+}
@@ -0,0 +1,77 @@
+package de.rpjosh.installer;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Defines how often a failed request is repeated. Between two attempts the installer waits an exponentially
+ * growing time with a random part (jitter), so that many clients don't retry at the same moment.
+ *
+ * Additionally an overall deadline can be set. After the deadline no further attempt is started and a running download is aborted
+ */
+public class RetryPolicy {
+
+	private final int maxAttempts;
+	private final long initialBackoff;
+	private final long maxBackoff;
+	private final int overallTimeout;
+
+	/**
+	 * @param maxAttempts		Maximum number of attempts (1 disables the retries)
+	 * @param initialBackoff	Time in milliseconds to wait before the first retry. The time is doubled for every further retry
+	 * @param maxBackoff		Maximum time in milliseconds to wait between two attempts
+	 * @param overallTimeout	Maximum time in seconds for all attempts together (0 = no limit)
+	 */
+	public RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, int overallTimeout) {
+		if (maxAttempts < 1) throw new IllegalArgumentException("At least one attempt is required");
+		if (initialBackoff < 0 || maxBackoff < initialBackoff) throw new IllegalArgumentException("Invalid backoff of " + initialBackoff + " - " + maxBackoff + " ms");
+		if (overallTimeout < 0) throw new IllegalArgumentException("The overall timeout must be greater or equal 0 seconds");
+
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.overallTimeout = overallTimeout;
+	}
+
+	/**
+	 * Returns the time to wait before the next attempt. The time lies between the half and the full
+	 * exponential backoff
+	 *
+	 * @param attempt		the number of the failed attempt (starting with 1)
+	 * @param retryAfter	the time in milliseconds the server asked to wait with the "Retry-After" header (-1 if not present)
+	 *
+	 * @return				the time in milliseconds
+	 */
+	protected long getBackoff(int attempt, long retryAfter) {
+
+		long backoff = initialBackoff;
+		for (int i = 1; i < attempt && backoff < maxBackoff; i++) backoff *= 2;
+		backoff = Math.min(backoff, maxBackoff);
+
+		long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		return retryAfter > 0 ? Math.min(maxBackoff, Math.max(jittered, retryAfter)) : jittered;
+	}
+
+	/**
+	 * Checks if a response code indicates a temporary problem of the server
+	 *
+	 * @param responseCode	the HTTP response code
+	 * @return				if the request should be repeated
+	 */
+	protected boolean isRetryable(int responseCode) {
+		return responseCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT || responseCode == 429
+				|| responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR || responseCode == HttpURLConnection.HTTP_BAD_GATEWAY
+				|| responseCode == HttpURLConnection.HTTP_UNAVAILABLE || responseCode == HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
+	}
+
+	/**
+	 * @return	the maximum number of attempts
+	 */
+	public int getMaxAttempts() { return maxAttempts; }
+
+	/**
+	 * @return	the maximum time in seconds for all attempts together (0 = no limit)
+	 */
+	public int getOverallTimeout() { return overallTimeout; }
+
+}
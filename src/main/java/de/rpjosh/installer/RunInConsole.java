@@ -3,13 +3,40 @@ package de.rpjosh.installer;
 import java.io.File;
 import java.io.IOException;
 import java.security.CodeSource;
-import java.util.concurrent.TimeUnit;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.rpjosh.installer.InstallConfig.OSType;
 
 
 public class RunInConsole {
 
+	// terminals that are tried to open a new console under Linux with the option to execute a command
+	private static final String[][] defaultTerminals = { 
+			{ "gnome-terminal", "--"}, {"xterm", "-e"}, {"xfce4-terminal", "-e"}, {"tilix", "-e"}, {"konsole", "-e"}, {"terminal", "-e"},
+			{ "wezterm", "start -e" }, { "alacritty", "-e" }
+	};
+	private static volatile List<String[]> preferredTerminals = new ArrayList<String[]>();
+
+	/**
+	 * [Linux] Sets terminals that are tried before the default terminals (gnome-terminal, xterm, ...) when a new console is opened
+	 * 
+	 * @param terminals		the name of the terminal with the option to execute a command like <code>{ "kitty", "-e" }</code>
+	 */
+	public static void setPreferredTerminals(String[]... terminals) {
+		List<String[]> preferred = new ArrayList<String[]>();
+		for (String[] terminal: terminals) {
+			if (terminal == null || terminal.length != 2 || terminal[0] == null || terminal[0].isBlank() || terminal[1] == null) {
+				throw new IllegalArgumentException("A terminal has to be specified as { name, option to execute a command } instead of " + Arrays.toString(terminal));
+			}
+			preferred.add(terminal.clone());
+		}
+		preferredTerminals = preferred;
+	}
+
 
 	/**
 	 * Opens the program inside a console if not already run inside a console window
@@ -42,6 +69,29 @@ public class RunInConsole {
     public static void start(String[] args, boolean keepOpen, boolean forceRestart, boolean asAdmin) {
         start(keepOpen, args, forceRestart, asAdmin);
     }
+    
+	/**
+	 * [Linux] Searches the terminals (and pkexec) in the background, so that a following {@link #start(String[], boolean, boolean, boolean)}
+	 * doesn't have to wait for it
+	 * 
+	 * @param asAdmin		if the console will be started with administrator privileges
+	 */
+	static void prepare(boolean asAdmin) {
+		if (InstallConfig.getOsType() != OSType.LINUX) return;
+		
+		HostProfile.get().probe(getTerminals().keySet());
+		if (asAdmin) HostProfile.get().probe(List.of("pkexec"));
+	}
+	
+	/**
+	 * @return	the names of the terminals in the order of preference with the option to execute a command
+	 */
+	private static Map<String, String> getTerminals() {
+		Map<String, String> terminals = new LinkedHashMap<String, String>();
+		for (String[] currentTerminal: preferredTerminals) terminals.putIfAbsent(currentTerminal[0], currentTerminal[1]);
+		for (String[] currentTerminal: defaultTerminals) terminals.putIfAbsent(currentTerminal[0], currentTerminal[1]);
+		return terminals;
+	}
 
 
 	private static void start(boolean keepOpen, final String[] args, boolean forceRestart, boolean asAdmin) {
@@ -100,17 +150,12 @@ public class RunInConsole {
         	
         	// Find a installed terminal that we can use to opened up a new terminal
         	try {
-            	String[][] terminals = { 
-            			{ "gnome-terminal", "--"}, {"xterm", "-e"}, {"xfce4-terminal", "-e"}, {"tilix", "-e"}, {"konsole", "-e"}, {"terminal", "-e"},
-            			{ "wezterm", "start -e" }, { "alacritty", "-e" }
-            	};
+            	Map<String, String> terminals = getTerminals();
             	
-            	// Find the first available terminal
-            	for (String currentTerminal[]: terminals) {
-    				if (isCommandAvailable(currentTerminal[0])) { 
-    					terminal = currentTerminal[0]; terminalCommand = currentTerminal[1]; break; 
-    				}
-            	}
+            	// Find the first available terminal (without starting a process). pkexec is searched at the same time
+            	if (asAdmin) HostProfile.get().probe(List.of("pkexec"));
+            	terminal = HostProfile.get().getFirstAvailableCommand(terminals.keySet());
+            	terminalCommand = terminals.get(terminal);
 
             	if (terminal == null) break;
             		
@@ -119,7 +164,7 @@ public class RunInConsole {
             		else          new ProcessBuilder("sh", "-c", terminal + " " + terminalCommand + " /bin/sh -c 'java -jar \"" + executableName + "\" " + strArgs + "'").start();
             	} else {
             		
-            		if (isCommandAvailable("pkexec")) {
+            		if (HostProfile.get().isCommandAvailable("pkexec")) {
             			// A polkit daemon is available on the system. We use it to authenticate the installer as root
             			Process proc = new ProcessBuilder(
             					"pkexec", "--user", "root", 
@@ -154,27 +199,6 @@ public class RunInConsole {
 		}
 	}
 	
-	/**
-	 * Queries if the provided command or application is available on this system.
-	 * 
-	 * @param command	Command to check
-	 * 
-	 * @return			Weather the command is available or not
-	 * 
-	 * @throws IOException 
-	 * @throws InterruptedException 
-	 */
-	private static boolean isCommandAvailable(String command) throws IOException, InterruptedException {
-		Process p = new ProcessBuilder("sh", "-c", "which " + command).start();
-		p.waitFor(2000, TimeUnit.SECONDS);
-		String output = "";
-		BufferedReader buf = new BufferedReader(new InputStreamReader(p.getInputStream()));
-		output = buf.readLine();
-		
-		return output != null && !output.isBlank();
-	}
-
-
 	/**
 	 * @return the name of the jar file <i> (MyInstaller.jar) </i>
 	 */
@@ -0,0 +1,132 @@
+package de.rpjosh.installer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes the steps of the installation as a dependency graph. A task is started as soon as all of its dependencies
+ * are finished, so independent tasks run concurrently on a bounded pool of threads.
+ *
+ * A task can only depend on tasks that were added before. When a task fails, all tasks that depend on it are skipped.
+ * The result is the error code of the first failed task in the order the tasks were added, so it doesn't depend on the
+ * order in which the threads finished
+ */
+public class TaskGraph {
+
+	private final Logger logger;
+	private final int parallelism;
+	private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+
+	/**
+	 * @param logger		the logger of the installation
+	 * @param parallelism	maximum number of tasks that are executed at the same time
+	 */
+	public TaskGraph(Logger logger, int parallelism) {
+		this.logger = logger;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Adds a task to the graph
+	 *
+	 * @param name			unique name of the task
+	 * @param errorCode		the error code of the installation when the task fails (0 = the failure is only logged)
+	 * @param task			the task
+	 * @param dependencies	names of the tasks that have to be finished successfully before
+	 */
+	protected void add(String name, int errorCode, Task task, String... dependencies) {
+
+		if (nodes.containsKey(name)) throw new IllegalArgumentException("The task \"" + name + "\" already exists");
+
+		List<Node> required = new ArrayList<Node>();
+		for (String dependency: dependencies) {
+			Node node = nodes.get(dependency);
+			if (node == null) throw new IllegalArgumentException("The task \"" + name + "\" depends on the unknown task \"" + dependency + "\"");
+			required.add(node);
+		}
+
+		nodes.put(name, new Node(name, errorCode, task, required));
+	}
+
+	/**
+	 * @return	the names of all tasks added so far
+	 */
+	protected String[] getTaskNames() { return nodes.keySet().toArray(new String[0]); }
+
+	/**
+	 * Executes all tasks and waits until they are finished
+	 *
+	 * @return	the error code of the first failed task (in the order of {@link #add(String, int, Task, String...)}) or 0
+	 */
+	protected int run() {
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, nodes.size())), new DaemonThreadFactory("installer-task"));
+
+		try {
+			// the tasks are added in a topological order, so the futures of the dependencies already exist
+			for (Node node: nodes.values()) {
+				CompletableFuture<?>[] dependencies = node.dependencies.stream().map(n -> n.future).toArray(CompletableFuture[]::new);
+				node.future = CompletableFuture.allOf(dependencies).thenRunAsync(() -> node.execute(), executor);
+			}
+
+			int error = 0;
+			for (Node node: nodes.values()) {
+				try {
+					node.future.join();
+				} catch (CompletionException ex) {
+					if (node.failure == null) {
+						logger.log("d", "Skipped the task \"" + node.name + "\" because a dependency failed", "TaskGraph#run");
+						continue;
+					}
+					logger.log(node.errorCode != 0 ? "e" : "w", "The task \"" + node.name + "\" failed: " + node.failure, "TaskGraph#run");
+					if (error == 0) error = node.errorCode;
+				}
+			}
+			return error;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * A step of the installation
+	 */
+	@FunctionalInterface
+	protected interface Task {
+		void run() throws Exception;
+	}
+
+	private static class Node {
+
+		final String name;
+		final int errorCode;
+		final Task task;
+		final List<Node> dependencies;
+		volatile CompletableFuture<Void> future;
+		// set when the task itself failed (and not one of its dependencies)
+		volatile Exception failure;
+
+		Node(String name, int errorCode, Task task, List<Node> dependencies) {
+			this.name = name;
+			this.errorCode = errorCode;
+			this.task = task;
+			this.dependencies = dependencies;
+		}
+
+		void execute() {
+			try {
+				task.run();
+			} catch (Exception ex) {
+				failure = ex;
+				throw new CompletionException(ex);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package de.rpjosh.installer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Removes the least recently used downloads when the cache exceeds its size
+ */
+public class ArtifactCacheTest {
+
+	private static final int FILE_SIZE = 400 * 1024;
+	private static final String VARIANT = "linux_x64";
+
+	@TempDir
+	Path directory;
+
+	private ArtifactCache cache;
+
+	@BeforeEach
+	public void setUp() {
+		InstallConfig conf = new InstallConfig("Test", "1.0", "test", "Test");
+		conf.setDownloadDirectory(directory.toString());
+		conf.setDownloadCacheSize(1);
+		cache = new ArtifactCache(conf);
+	}
+
+	@Test
+	public void getEntry() throws Exception {
+
+		put("https://example.com/a.jar");
+
+		ArtifactCache.Entry entry = cache.get("https://example.com/a.jar", VARIANT);
+		assertNotNull(entry);
+		assertEquals(FILE_SIZE, entry.getFile().length());
+		assertEquals("\"v1\"", entry.eTag);
+		assertNull(cache.get("https://example.com/a.jar", "windows_x64"));
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws Exception {
+
+		put("https://example.com/a.jar");
+		put("https://example.com/b.jar");
+
+		// "a" was used more recently than "b"
+		cache.touch(cache.get("https://example.com/a.jar", VARIANT));
+		Thread.sleep(10);
+		put("https://example.com/c.jar");
+
+		assertNotNull(cache.get("https://example.com/a.jar", VARIANT));
+		assertNull(cache.get("https://example.com/b.jar", VARIANT));
+		assertNotNull(cache.get("https://example.com/c.jar", VARIANT));
+	}
+
+	/**
+	 * The entry that was just added is kept even when it's larger than the whole cache
+	 */
+	@Test
+	public void keepNewEntry() throws Exception {
+
+		put("https://example.com/a.jar");
+
+		File large = directory.resolve("large.jar").toFile();
+		Files.write(large.toPath(), new byte[2 * 1024 * 1024]);
+		cache.put("https://example.com/large.jar", VARIANT, large, "\"v1\"", null, null, null);
+
+		assertNull(cache.get("https://example.com/a.jar", VARIANT));
+		assertNotNull(cache.get("https://example.com/large.jar", VARIANT));
+	}
+
+	private void put(String url) throws IOException, InterruptedException {
+
+		File file = Files.createTempFile(directory, "download", ".jar").toFile();
+		Files.write(file.toPath(), new byte[FILE_SIZE]);
+
+		cache.put(url, VARIANT, file, "\"v1\"", null, null, null);
+		// the last access time has a resolution of milliseconds
+		Thread.sleep(10);
+	}
+
+}
@@ -0,0 +1,129 @@
+package de.rpjosh.installer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Assembles a new jar file out of an installed jar file and the changed entries of a remote jar file
+ */
+public class DeltaUpdateTest {
+
+	private static final int ENTRIES = 100;
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Deflated entries are written with a data descriptor behind the compressed data
+	 */
+	@Test
+	public void deflatedEntries() throws Exception {
+		this.update(false);
+	}
+
+	@Test
+	public void storedEntries() throws Exception {
+		this.update(true);
+	}
+
+	@Test
+	public void noZipFile() throws Exception {
+		byte[] remote = new byte[64 * 1024];
+		new Random(3).nextBytes(remote);
+
+		File installed = directory.resolve("installed.jar").toFile();
+		Files.write(installed.toPath(), createJar(1, false));
+
+		try (TestHttpServer server = new TestHttpServer(remote)) {
+			Downloader downloader = new Downloader(getConfig(), server.getURL("app.jar"));
+			downloader.probe();
+
+			assertEquals(null, new DeltaUpdate(getConfig(), downloader).apply(installed, directory.resolve("new.jar").toFile()));
+		}
+	}
+
+	private void update(boolean stored) throws Exception {
+
+		byte[] previous = createJar(1, stored);
+		byte[] current = createJar(2, stored);
+
+		File installed = directory.resolve("installed.jar").toFile();
+		Files.write(installed.toPath(), previous);
+
+		try (TestHttpServer server = new TestHttpServer(current)) {
+			InstallConfig conf = getConfig();
+			Downloader downloader = new Downloader(conf, server.getURL("app.jar"));
+			downloader.probe();
+
+			DeltaUpdate update = new DeltaUpdate(conf, downloader);
+			File result = update.apply(installed, directory.resolve("new.jar").toFile());
+
+			assertNotNull(result);
+			assertArrayEquals(current, Files.readAllBytes(result.toPath()));
+			// only the two changed, the added entry and the central directory should be downloaded
+			assertTrue(update.getReusedBytes() > current.length / 2, "reused " + update.getReusedBytes() + " of " + current.length + " bytes");
+			assertTrue(update.getDownloadedBytes() < current.length / 4, "downloaded " + update.getDownloadedBytes() + " of " + current.length + " bytes");
+		}
+	}
+
+	private InstallConfig getConfig() {
+		InstallConfig conf = new InstallConfig("Test", "1.0", "test", "Test");
+		conf.setDownloadDirectory(directory.toString());
+		return conf;
+	}
+
+	/**
+	 * Creates a jar file. In the second version one entry is removed, two are changed and one is added
+	 */
+	private static byte[] createJar(int version, boolean stored) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			Random random = new Random(1);
+			for (int i = 0; i < ENTRIES; i++) {
+				byte[] data = new byte[8 * 1024];
+				for (int j = 0; j < data.length; j++) data[j] = (byte) ('a' + random.nextInt(6));
+
+				if (version == 2 && i == 50) continue;
+				if (version == 2 && (i == 10 || i == 70)) data[5] = 'z';
+
+				putEntry(zip, "de/test/C" + i + ".class", data, stored);
+			}
+			if (version == 2) putEntry(zip, "de/test/Added.class", new byte[3000], stored);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void putEntry(ZipOutputStream zip, String name, byte[] data, boolean stored) throws IOException {
+
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(1000000000000L);
+		if (stored) {
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			entry.setMethod(ZipEntry.STORED);
+			entry.setSize(data.length);
+			entry.setCrc(crc.getValue());
+		}
+
+		zip.putNextEntry(entry);
+		zip.write(data);
+		zip.closeEntry();
+	}
+
+}
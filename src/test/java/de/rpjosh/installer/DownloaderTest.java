@@ -0,0 +1,97 @@
+package de.rpjosh.installer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Resumes a download after a connection was aborted in the middle of a part
+ */
+public class DownloaderTest {
+
+	private static final int SIZE = 12 * 1024 * 1024 + 7;
+	private static final int FAIL_AFTER = 2 * 1024 * 1024;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void retryWithValidator() throws Exception {
+		this.retry("\"v1\"");
+	}
+
+	/**
+	 * Without a validator the downloaded parts are only kept within the same installation run
+	 */
+	@Test
+	public void retryWithoutValidator() throws Exception {
+		this.retry(null);
+	}
+
+	/**
+	 * The next installation run continues with the parts that were downloaded by the failed run
+	 */
+	@Test
+	public void resumeInNextRun() throws Exception {
+
+		byte[] content = createContent();
+		try (TestHttpServer server = new TestHttpServer(content)) {
+			server.failAfter(FAIL_AFTER, 1);
+
+			InstallConfig conf = getConfig(1);
+			Downloader failed = new Downloader(conf, server.getURL("app.jar"));
+			failed.probe();
+			assertThrows(IOException.class, () -> failed.download());
+
+			Downloader downloader = new Downloader(conf, server.getURL("app.jar"));
+			downloader.probe();
+			File file = downloader.download();
+
+			assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+			assertTrue(downloader.getDownloadedBytes() < SIZE, "downloaded " + downloader.getDownloadedBytes() + " of " + SIZE + " bytes");
+		}
+	}
+
+	private void retry(String eTag) throws Exception {
+
+		byte[] content = createContent();
+		try (TestHttpServer server = new TestHttpServer(content)) {
+			server.setETag(eTag);
+			server.failAfter(FAIL_AFTER, 1);
+
+			Downloader downloader = new Downloader(getConfig(3), server.getURL("app.jar"));
+			downloader.probe();
+			File file = downloader.download();
+
+			assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+			// the second attempt only downloads the remaining bytes
+			assertTrue(downloader.getDownloadedBytes() <= SIZE - FAIL_AFTER, "downloaded " + downloader.getDownloadedBytes() + " of " + SIZE + " bytes");
+			assertEquals(SIZE, downloader.getTransferredBytes());
+		}
+	}
+
+	private InstallConfig getConfig(int attempts) {
+		InstallConfig conf = new InstallConfig("Test", "1.0", "test", "Test");
+		conf.setDownloadDirectory(directory.toString());
+		conf.setDownloadConnections(4);
+		conf.setRetryPolicy(attempts, 10, 10, 0);
+		return conf;
+	}
+
+	private static byte[] createContent() {
+		byte[] content = new byte[SIZE];
+		new Random(2).nextBytes(content);
+		return content;
+	}
+
+}
@@ -0,0 +1,92 @@
+package de.rpjosh.installer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import de.rpjosh.installer.InstallConfig.OSType;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes a file on a reinstallation only when the content or the installed file changed
+ */
+public class InstallLedgerTest {
+
+	private static final String CONTENT = "[Desktop Entry]\nName=Test\n";
+
+	@TempDir
+	Path directory;
+
+	private InstallConfig conf;
+	private File file;
+
+	@BeforeEach
+	public void setUp() {
+		conf = new InstallConfig("Test", "1.0", "test", "Test");
+		conf.setPortable(directory.toString().replace("\\", "/") + "/");
+		new File(conf.getApplicationDir()).mkdirs();
+		file = directory.resolve("test.desktop").toFile();
+	}
+
+	@Test
+	public void unchangedFile() throws Exception {
+
+		InstallLedger ledger = new InstallLedger(conf, null);
+		assertTrue(ledger.writeText(file, CONTENT));
+		ledger.save();
+
+		assertFalse(ledger.writeText(file, CONTENT));
+		assertTrue(new InstallLedger(conf, null).isUnchanged(file, InstallLedger.hash(CONTENT.getBytes())));
+		assertFalse(new InstallLedger(conf, null).isUnchanged(file, InstallLedger.hash("Name=Other".getBytes())));
+	}
+
+	@Test
+	public void manualEdit() throws Exception {
+
+		InstallLedger ledger = new InstallLedger(conf, null);
+		ledger.writeText(file, CONTENT);
+		ledger.save();
+
+		Files.write(file.toPath(), "[Desktop Entry]\nName=Edited by the user\n".getBytes(StandardCharsets.UTF_8));
+
+		assertFalse(new InstallLedger(conf, null).isUnchanged(file, InstallLedger.hash(CONTENT.getBytes())));
+		assertTrue(new InstallLedger(conf, null).writeText(file, CONTENT));
+	}
+
+	@Test
+	public void changedPermissions() throws Exception {
+
+		Assumptions.assumeTrue(InstallConfig.getOsType() != OSType.WINDOWS);
+
+		InstallLedger ledger = new InstallLedger(conf, null);
+		ledger.writeText(file, CONTENT);
+		ledger.save();
+		long lastModified = file.lastModified();
+
+		Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+		assertTrue(file.setLastModified(lastModified));
+
+		assertFalse(new InstallLedger(conf, null).isUnchanged(file, InstallLedger.hash(CONTENT.getBytes())));
+	}
+
+	@Test
+	public void removedFile() throws Exception {
+
+		InstallLedger ledger = new InstallLedger(conf, null);
+		ledger.writeText(file, CONTENT);
+		ledger.save();
+		assertTrue(file.delete());
+
+		assertFalse(new InstallLedger(conf, null).isUnchanged(file, InstallLedger.hash(CONTENT.getBytes())));
+	}
+
+}
@@ -0,0 +1,91 @@
+package de.rpjosh.installer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Replaces the installed files only when all files could be staged
+ */
+public class InstallTransactionTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void commit() throws Exception {
+
+		File jar = write("app.jar", "old");
+		File desktop = directory.resolve("app.desktop").toFile();
+
+		InstallTransaction transaction = new InstallTransaction(new Logger());
+		Files.write(transaction.stage(jar).toPath(), "new".getBytes(StandardCharsets.UTF_8));
+		Files.write(transaction.stage(desktop).toPath(), "[Desktop Entry]".getBytes(StandardCharsets.UTF_8));
+		assertEquals("new", read(transaction.resolve(jar)));
+		assertEquals("old", read(jar));
+
+		transaction.commit();
+
+		assertEquals("new", read(jar));
+		assertEquals("[Desktop Entry]", read(desktop));
+		assertEquals(2, directory.toFile().list().length, "no staged or backup files should remain");
+	}
+
+	@Test
+	public void rollback() throws Exception {
+
+		File jar = write("app.jar", "old");
+
+		InstallTransaction transaction = new InstallTransaction(new Logger());
+		Files.write(transaction.stage(jar).toPath(), "new".getBytes(StandardCharsets.UTF_8));
+		transaction.rollback();
+
+		assertEquals("old", read(jar));
+		assertEquals(1, directory.toFile().list().length);
+		assertThrows(IllegalStateException.class, () -> transaction.stage(jar));
+	}
+
+	/**
+	 * When a file can't be moved into place, the already replaced files are restored
+	 */
+	@Test
+	public void commitFailureRestoresBackups() throws Exception {
+
+		File jar = write("app.jar", "old");
+		File config = write("app.conf", "config");
+		File desktop = write("app.desktop", "[Desktop Entry]");
+
+		InstallTransaction transaction = new InstallTransaction(new Logger());
+		Files.write(transaction.stage(jar).toPath(), "new".getBytes(StandardCharsets.UTF_8));
+		Files.write(transaction.stage(config).toPath(), "new config".getBytes(StandardCharsets.UTF_8));
+		// a directory can't replace a file
+		Files.createDirectory(transaction.stage(desktop).toPath());
+
+		assertThrows(IOException.class, () -> transaction.commit());
+
+		assertEquals("old", read(jar));
+		assertEquals("config", read(config));
+		assertEquals("[Desktop Entry]", read(desktop));
+		for (String name: directory.toFile().list()) {
+			assertFalse(name.endsWith(".staged") || name.endsWith(".previous"), "the file \"" + name + "\" should be removed");
+		}
+	}
+
+	private File write(String name, String content) throws IOException {
+		return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8)).toFile();
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,62 @@
+package de.rpjosh.installer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Executes the steps of an installation in the order of their dependencies
+ */
+public class TaskGraphTest {
+
+	@Test
+	public void dependencyOrder() {
+
+		List<String> executed = new CopyOnWriteArrayList<String>();
+		TaskGraph graph = new TaskGraph(new Logger(), 4);
+		graph.add("download", 1, () -> executed.add("download"));
+		graph.add("config", 2, () -> executed.add("config"));
+		graph.add("install", 3, () -> executed.add("install"), "download", "config");
+
+		assertEquals(0, graph.run());
+		assertEquals(3, executed.size());
+		assertEquals("install", executed.get(2));
+	}
+
+	@Test
+	public void skipOnFailedDependency() {
+
+		List<String> executed = new CopyOnWriteArrayList<String>();
+		TaskGraph graph = new TaskGraph(new Logger(), 4);
+		graph.add("download", 10, () -> { throw new IOException("Connection refused"); });
+		graph.add("config", 20, () -> executed.add("config"));
+		graph.add("install", 30, () -> executed.add("install"), "download");
+		graph.add("shortcut", 40, () -> executed.add("shortcut"), "install");
+
+		assertEquals(10, graph.run());
+		assertTrue(executed.contains("config"));
+		assertFalse(executed.contains("install"));
+		assertFalse(executed.contains("shortcut"));
+	}
+
+	/**
+	 * The error code of the first failed task (in the order the tasks were added) is returned
+	 */
+	@Test
+	public void firstErrorCode() {
+
+		TaskGraph graph = new TaskGraph(new Logger(), 2);
+		graph.add("optional", 0, () -> { throw new IOException("Not available"); });
+		graph.add("desktop", 5, () -> { Thread.sleep(50); throw new IOException("Permission denied"); });
+		graph.add("link", 6, () -> { throw new IOException("Permission denied"); });
+
+		assertEquals(5, graph.run());
+	}
+
+}
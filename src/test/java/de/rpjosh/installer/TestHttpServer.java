@@ -0,0 +1,146 @@
+package de.rpjosh.installer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server that serves a single file with support for range requests.
+ * The connection can be aborted after a number of bytes to simulate a failed download
+ */
+class TestHttpServer implements AutoCloseable {
+
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final byte[] content;
+
+	// null = the server doesn't send any validators
+	private volatile String eTag = "\"v1\"";
+	private volatile long failAfterBytes = -1;
+	private final AtomicInteger failures = new AtomicInteger();
+	// "method range" of every request
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+	/**
+	 * Starts the server on a random port of the loopback interface
+	 *
+	 * @param content	the content of the served file
+	 */
+	TestHttpServer(byte[] content) throws IOException {
+		this.content = content;
+		this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("test-http"));
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.setExecutor(executor);
+		this.server.createContext("/", exchange -> {
+			try {
+				this.handle(exchange);
+			} catch (IOException ex) {
+				// the connection was aborted
+			} finally {
+				exchange.close();
+			}
+		});
+		this.server.start();
+	}
+
+	/**
+	 * @param path	the path of the file (the same file is returned for every path)
+	 * @return		the URL of the file
+	 */
+	URL getURL(String path) throws IOException {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/" + path);
+	}
+
+	/**
+	 * @param eTag	the returned ETag. Null = neither an ETag nor a Last-Modified header is sent
+	 */
+	void setETag(String eTag) { this.eTag = eTag; }
+
+	/**
+	 * Aborts the next responses after the given number of bytes
+	 *
+	 * @param bytes		number of bytes that are sent before the connection is closed
+	 * @param times		number of responses that are aborted
+	 */
+	void failAfter(long bytes, int times) {
+		this.failAfterBytes = bytes;
+		this.failures.set(times);
+	}
+
+	/**
+	 * @return	all received requests as "GET bytes=0-99"
+	 */
+	List<String> getRequests() {
+		synchronized (requests) { return new ArrayList<String>(requests); }
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		requests.add(exchange.getRequestMethod() + " " + range);
+
+		String eTag = this.eTag;
+		if (eTag != null) {
+			exchange.getResponseHeaders().add("ETag", eTag);
+			exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+			if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+		}
+		exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+
+		// a range is only returned when the file didn't change
+		long start = 0;
+		long end = content.length - 1;
+		int code = 200;
+		if (range != null && (ifRange == null || ifRange.equals(eTag) || ifRange.equals(LAST_MODIFIED))) {
+			String[] bounds = range.substring("bytes=".length()).split("-", -1);
+			if (bounds[0].isEmpty()) start = content.length - Long.parseLong(bounds[1]);
+			else {
+				start = Long.parseLong(bounds[0]);
+				if (!bounds[1].isEmpty()) end = Math.min(Long.parseLong(bounds[1]), content.length - 1);
+			}
+			code = 206;
+			exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+		}
+
+		long length = end - start + 1;
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(code, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(code, length);
+
+		boolean fail = failAfterBytes >= 0 && failAfterBytes < length && failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0;
+		OutputStream out = exchange.getResponseBody();
+		if (fail) {
+			// the stream isn't closed, so the server drops the connection
+			out.write(content, (int) start, (int) failAfterBytes);
+			out.flush();
+			throw new IOException("Simulated failure after " + failAfterBytes + " bytes");
+		}
+		out.write(content, (int) start, (int) length);
+		out.close();
+	}
+
+}